@@ -0,0 +1,60 @@
+#!/bin/sh
+#
+# Checks the distributed mode on localhost: a small graph is run in memory and with 1 and 3
+# worker processes (-k), and the communities written with -u must be the same.
+#
+# usage: bin/check-distributed.sh [graph file]     (run from the project directory after mvn compile)
+#
+# Without a graph file a small graph with planted communities is made.
+#
+
+cd "$(dirname "$0")/.." || exit 1
+
+WORK=$(mktemp -d)
+trap 'rm -rf "$WORK"' EXIT
+
+CP="target/classes:$(mvn -q dependency:build-classpath -Dmdep.outputFile=/dev/stdout)"
+MAIN=edu.fit.brees.ego.driver.FastEgoDriver
+
+GRAPH="$1"
+if [ -z "$GRAPH" ]; then
+	GRAPH="$WORK/graph.dat"
+
+	# 40 groups of 15 vertices, dense inside and a few edges between the groups
+	awk 'BEGIN {
+		srand(7);
+		n = 600; print "*Vertices " n; print "*Edges";
+		for ( u = 1; u <= n; u++)
+			for ( v = u + 1; v <= n; v++) {
+				same = int((u - 1) / 15) == int((v - 1) / 15);
+				if ( ( same && rand() < 0.6) || ( ! same && rand() < 0.002))
+					print u " " v;
+			}
+	}' > "$GRAPH"
+fi
+
+run()
+{
+	java -cp "$CP" $MAIN -t 2 -o 0.75 -f "$GRAPH" -u "$WORK/$1.txt" $2 > "$WORK/$1.log" 2>&1 || {
+		echo "FAIL $1: the run failed"
+		cat "$WORK/$1.log"
+		exit 1
+	}
+	sort "$WORK/$1.txt" > "$WORK/$1.sorted"
+}
+
+run memory ""
+status=0
+
+for k in 1 3; do
+	run "k$k" "-k $k"
+
+	if cmp -s "$WORK/memory.sorted" "$WORK/k$k.sorted"; then
+		echo "OK   -k $k  $(wc -l < "$WORK/k$k.sorted") communities"
+	else
+		echo "FAIL -k $k  the communities differ from the in-memory run"
+		status=1
+	fi
+done
+
+exit $status
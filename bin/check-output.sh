@@ -0,0 +1,58 @@
+#!/bin/sh
+#
+# Checks the community output formats: the communities are written as text (-u) and as
+# binary (-u -b, in one file and in 3 shards with -l 3), read back with the CommunityFileReader,
+# and the labels and members must be the same.
+#
+# usage: bin/check-output.sh [graph file]     (run from the project directory after mvn compile)
+#
+# Without a graph file a small graph with planted communities is made.
+#
+
+cd "$(dirname "$0")/.." || exit 1
+
+WORK=$(mktemp -d)
+trap 'rm -rf "$WORK"' EXIT
+
+CP="target/classes:$(mvn -q dependency:build-classpath -Dmdep.outputFile=/dev/stdout)"
+MAIN=edu.fit.brees.ego.driver.FastEgoDriver
+READER=edu.fit.brees.ego.loader.CommunityFileReader
+
+GRAPH="$1"
+if [ -z "$GRAPH" ]; then
+	GRAPH="$WORK/graph.dat"
+
+	# 40 groups of 15 vertices, dense inside and a few edges between the groups
+	awk 'BEGIN {
+		srand(7);
+		n = 600; print "*Vertices " n; print "*Edges";
+		for ( u = 1; u <= n; u++)
+			for ( v = u + 1; v <= n; v++) {
+				same = int((u - 1) / 15) == int((v - 1) / 15);
+				if ( ( same && rand() < 0.6) || ( ! same && rand() < 0.002))
+					print u " " v;
+			}
+	}' > "$GRAPH"
+fi
+
+run()
+{
+	java -cp "$CP" $MAIN -t 2 -o 0.75 -f "$GRAPH" -u "$WORK/$1" $2 > "$WORK/$1.log" 2>&1 || {
+		echo "FAIL $1: the run failed"
+		cat "$WORK/$1.log"
+		exit 1
+	}
+}
+
+run text ""
+status=0
+
+for out in "binary:-b" "shards:-b -l 3"; do
+	name=${out%%:*}
+	run "$name" "${out#*:}"
+
+	printf '%-7s ' "$name"
+	java -cp "$CP" $READER "$WORK/text" "$WORK/$name" || status=1
+done
+
+exit $status
@@ -0,0 +1,108 @@
+/*
+ * 
+ * Copyright 2014 Bradley S. Rees
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License. 
+ *  
+ */
+package edu.fit.brees.ego.community;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Hashtable;
+
+
+/**
+ * Collects the final ego-community labels into communities.
+ *
+ * Ego-communities of two vertices (the ego-vertex and a single neighbor) are collected
+ * into the temporary (special case) communities unless the label is already a community.
+ *
+ * @author bradrees
+ *
+ */
+public class CommunityCollector
+{
+	private Hashtable<Float, HashSet<Integer>> communities		= new Hashtable<>();
+	private Hashtable<Float, HashSet<Integer>> tmpCommunities	= new Hashtable<>();
+
+
+	public CommunityCollector()
+	{
+		;
+	}
+
+
+	/**
+	 * Add the vertex to the community of an ego-community
+	 *
+	 * @param ec
+	 * @param vertexID
+	 */
+	public void add(EgoCommunity ec, int vertexID)
+	{
+		add(ec.getId(), ec.size(), ec.getMembers(), vertexID);
+	}
+
+
+	/**
+	 *
+	 * @param label		- the final ego-community ID
+	 * @param size		- the number of members
+	 * @param members	- the members, only used if the size is 2
+	 * @param vertexID	- the vertex that holds the ego-community
+	 */
+	public void add(float label, int size, Collection<Integer> members, int vertexID)
+	{
+		if ( size > 2 || size == 1) {
+			Float commID = label;
+
+			// Get the community Set from the master list
+			HashSet<Integer> community = communities.get(commID);
+
+			if (community == null) {
+				// this is the first time seeing this
+				community = new HashSet<Integer>();
+				communities.put(commID, community);
+			}
+
+			community.add(vertexID);
+		}
+		else  // the size is 2 or less
+		{
+			Float commID = label;
+
+			// Get the community Set from the master list
+			HashSet<Integer> community = communities.get(commID);
+
+			if (community == null) {
+				// this is the first time seeing this
+				community = new HashSet<Integer>();
+				tmpCommunities.put(commID, community);
+			}
+
+			for ( Integer x : members)
+				community.add(x);
+		}
+	}
+
+
+	public Hashtable<Float, HashSet<Integer>> getCommunities() {
+		return communities;
+	}
+
+
+	public Hashtable<Float, HashSet<Integer>> getTmpCommunities() {
+		return tmpCommunities;
+	}
+}
@@ -0,0 +1,187 @@
+/*
+ * 
+ * Copyright 2014 Bradley S. Rees
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License. 
+ *  
+ */
+package edu.fit.brees.ego.community;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Hashtable;
+import java.util.Map;
+import java.util.Set;
+
+
+/**
+ * Communities held as flat arrays.  The members of community x are 
+ * members[offsets[x]] .. members[offsets[x+1]-1], sorted and without duplicates.
+ * 
+ * @author bradrees
+ *
+ */
+public class CommunityTable
+{
+	private final float[]	labels;
+	private final int[]		offsets;
+	private final int[]		members;
+	
+	
+	public CommunityTable(float[] labels, int[] offsets, int[] members)
+	{
+		this.labels		= labels;
+		this.offsets	= offsets;
+		this.members	= members;
+	}
+	
+	
+	/**
+	 * A table of the communities in order of size, smallest first.  Communities of the same
+	 * size are in order of label.
+	 * 
+	 * @param communities
+	 * @return
+	 */
+	public static CommunityTable bySize(final Map<Float, ? extends Set<Integer>> communities)
+	{
+		Float[] keys = communities.keySet().toArray(new Float[communities.size()]);
+		
+		Arrays.sort(keys, new Comparator<Float>() {
+			public int compare(Float a, Float b) {
+				int sa = communities.get(a).size();
+				int sb = communities.get(b).size();
+				return ( sa != sb) ? Integer.compare(sa, sb) : a.compareTo(b);
+			}
+		});
+		
+		float[] labels	= new float[keys.length];
+		int[] offsets	= new int[keys.length + 1];
+		
+		for ( int x = 0; x < keys.length; x++) {
+			labels[x] = keys[x];
+			offsets[x + 1] = offsets[x] + communities.get(keys[x]).size();
+		}
+		
+		int[] members = new int[offsets[keys.length]];
+		
+		for ( int x = 0; x < keys.length; x++) {
+			int p = offsets[x];
+			for ( Integer m : communities.get(keys[x]))
+				members[p++] = m;
+			Arrays.sort(members, offsets[x], p);
+		}
+		
+		return new CommunityTable(labels, offsets, members);
+	}
+	
+	
+	/**
+	 * 
+	 * @param other
+	 * @return the communities of this table followed by those of the other
+	 */
+	public CommunityTable concat(CommunityTable other)
+	{
+		int n = labels.length;
+		
+		float[] l = Arrays.copyOf(labels, n + other.labels.length);
+		System.arraycopy(other.labels, 0, l, n, other.labels.length);
+		
+		int[] o = Arrays.copyOf(offsets, n + other.offsets.length);
+		for ( int x = 1; x < other.offsets.length; x++)
+			o[n + x] = offsets[n] + other.offsets[x];
+		
+		int[] m = Arrays.copyOf(members, members.length + other.members.length);
+		System.arraycopy(other.members, 0, m, members.length, other.members.length);
+		
+		return new CommunityTable(l, o, m);
+	}
+	
+	
+	/**
+	 * Is community a a subset of community b?  Both are sorted, so this is a merge
+	 * 
+	 * @param a
+	 * @param b
+	 * @return
+	 */
+	public boolean isSubset(int a, int b)
+	{
+		int p = offsets[a], q = offsets[b];
+		int pEnd = offsets[a + 1], qEnd = offsets[b + 1];
+		
+		if ( pEnd - p > qEnd - q)
+			return false;
+		
+		while ( p < pEnd) 
+		{
+			if ( qEnd - q < pEnd - p)
+				return false;
+			
+			if ( members[p] == members[q]) {
+				p++; q++;
+			} else if ( members[p] > members[q])
+				q++;
+			else
+				return false;
+		}
+		
+		return true;
+	}
+	
+	
+	/**
+	 * The same communities in the form used by CommunityCollector
+	 * 
+	 * @return
+	 */
+	public Hashtable<Float, HashSet<Integer>> toHashtable()
+	{
+		Hashtable<Float, HashSet<Integer>> table = new Hashtable<>(labels.length * 2 + 1);
+		
+		for ( int x = 0; x < labels.length; x++)
+		{
+			HashSet<Integer> community = new HashSet<>( (offsets[x + 1] - offsets[x]) * 2);
+			
+			for ( int p = offsets[x]; p < offsets[x + 1]; p++)
+				community.add(members[p]);
+			
+			table.put(labels[x], community);
+		}
+		
+		return table;
+	}
+	
+	
+	public int size() {
+		return labels.length;
+	}
+	
+	public float getLabel(int x) {
+		return labels[x];
+	}
+	
+	public int getSize(int x) {
+		return offsets[x + 1] - offsets[x];
+	}
+	
+	public int[] getOffsets() {
+		return offsets;
+	}
+	
+	public int[] getMembers() {
+		return members;
+	}
+}
@@ -0,0 +1,252 @@
+/*
+ * 
+ * Copyright 2014 Bradley S. Rees
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License. 
+ *  
+ */
+package edu.fit.brees.ego.community;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+
+/**
+ * Streams a CommunityTable to a file through a buffered channel.  Nothing is built per 
+ * member, the digits or bytes are written straight into the buffer.
+ * 
+ * 	text	one community per line, the label, a tab, then the members in order separated by a space
+ * 	binary	the int "EGOC", a version byte, then for each community:
+ * 				the label			4 bytes, the float bits
+ * 				the member count	varint
+ * 				the first member	zig-zag varint
+ * 				the other members	varint of the difference from the one before
+ * 
+ * The table can be cut into shards of about the same number of members, each written to its
+ * own file (path.0, path.1, ...) by its own thread.  With one shard the file is the path.
+ * Both formats are read back by the loader's CommunityFileReader.
+ * 
+ * @author bradrees
+ *
+ */
+public class CommunityWriter
+{
+	public static final int		MAGIC		= 0x45474F43;		// "EGOC"
+	public static final byte	VERSION		= 1;
+	
+	private static final int	BUFFER_SIZE	= 1 << 20;
+	
+	private final boolean	binary;
+	private final int		shards;
+	
+	
+	/**
+	 * 
+	 * @param binary	- the binary format, otherwise text
+	 * @param shards	- the number of files
+	 */
+	public CommunityWriter(boolean binary, int shards)
+	{
+		this.binary	= binary;
+		this.shards	= Math.max(1, shards);
+	}
+	
+	
+	/**
+	 * Write the table
+	 * 
+	 * @param table
+	 * @param path
+	 * @return the files written
+	 * @throws IOException
+	 */
+	public List<File> write(final CommunityTable table, String path) throws IOException
+	{
+		final int[] offsets = table.getOffsets();
+		final int total = offsets[table.size()];
+		
+		// cut at about the same number of members
+		final int[] cut = new int[shards + 1];
+		cut[shards] = table.size();
+		
+		for ( int s = 1; s < shards; s++) {
+			int c = Arrays.binarySearch(offsets, 0, table.size() + 1, (int)((long)total * s / shards));
+			cut[s] = Math.max(cut[s - 1], ( c < 0) ? -c - 1 : c);
+		}
+		
+		final List<File> files = new ArrayList<>();
+		for ( int s = 0; s < shards; s++)
+			files.add( new File( shards == 1 ? path : path + "." + s));
+		
+		if ( shards == 1) {
+			writeShard(table, 0, table.size(), files.get(0));
+			return files;
+		}
+		
+		ExecutorService es = Executors.newFixedThreadPool(shards);
+		List<Future<Object>> done = new ArrayList<>();
+		
+		for ( int s = 0; s < shards; s++) {
+			final int shard = s;
+			done.add( es.submit( new Callable<Object>() {
+				public Object call() throws Exception {
+					writeShard(table, cut[shard], cut[shard + 1], files.get(shard));
+					return null;
+				}
+			}));
+		}
+		
+		try {
+			for ( Future<Object> f : done)
+				f.get();
+		}
+		catch (Exception e) {
+			throw new IOException("Writing communities: " + e.getMessage(), e);
+		}
+		finally {
+			es.shutdown();
+		}
+		
+		return files;
+	}
+	
+	
+	/**
+	 * Write the communities [from, to) to a file
+	 */
+	private void writeShard(CommunityTable table, int from, int to, File file) throws IOException
+	{
+		int[] offsets = table.getOffsets();
+		int[] members = table.getMembers();
+		
+		FileOutputStream out = new FileOutputStream(file);
+		FileChannel channel = out.getChannel();
+		ByteBuffer buf = ByteBuffer.allocateDirect(BUFFER_SIZE);
+		
+		try
+		{
+			if ( binary) {
+				buf.putInt(MAGIC);
+				buf.put(VERSION);
+			}
+			
+			for ( int c = from; c < to; c++)
+			{
+				int start = offsets[c], end = offsets[c + 1];
+				
+				if ( binary)
+				{
+					room(channel, buf, 4 + 5);
+					buf.putInt(Float.floatToRawIntBits(table.getLabel(c)));
+					putVarint(buf, end - start);
+					
+					for ( int p = start; p < end; p++) {
+						room(channel, buf, 5);
+						
+						if ( p == start)
+							putVarint(buf, (members[p] << 1) ^ (members[p] >> 31));
+						else
+							putVarint(buf, members[p] - members[p - 1]);
+					}
+				}
+				else
+				{
+					String label = Float.toString(table.getLabel(c));
+					room(channel, buf, label.length() + 1);
+					
+					for ( int x = 0; x < label.length(); x++)
+						buf.put((byte)label.charAt(x));
+					buf.put((byte)'\t');
+					
+					for ( int p = start; p < end; p++) {
+						room(channel, buf, 12);
+						
+						if ( p > start)
+							buf.put((byte)' ');
+						putDecimal(buf, members[p]);
+					}
+					
+					room(channel, buf, 1);
+					buf.put((byte)'\n');
+				}
+			}
+			
+			drain(channel, buf);
+		}
+		finally
+		{
+			channel.close();
+			out.close();
+		}
+	}
+	
+	
+	/**
+	 * Make sure the buffer has room for n more bytes
+	 */
+	private static void room(FileChannel channel, ByteBuffer buf, int n) throws IOException
+	{
+		if ( buf.remaining() < n)
+			drain(channel, buf);
+	}
+	
+	
+	private static void drain(FileChannel channel, ByteBuffer buf) throws IOException
+	{
+		buf.flip();
+		while ( buf.hasRemaining())
+			channel.write(buf);
+		buf.clear();
+	}
+	
+	
+	private static void putVarint(ByteBuffer buf, int value)
+	{
+		while ( (value & ~0x7F) != 0) {
+			buf.put( (byte)((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		buf.put( (byte)value);
+	}
+	
+	
+	/**
+	 * The decimal digits of an int, at most 11 bytes
+	 */
+	private static void putDecimal(ByteBuffer buf, int value)
+	{
+		long v = value;
+		
+		if ( v < 0) {
+			buf.put((byte)'-');
+			v = -v;
+		}
+		
+		long div = 1;
+		while ( div * 10 <= v)
+			div *= 10;
+		
+		for ( ; div > 0; div /= 10)
+			buf.put( (byte)('0' + (v / div) % 10));
+	}
+}
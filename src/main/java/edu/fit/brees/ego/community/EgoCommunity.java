@@ -19,6 +19,7 @@ package edu.fit.brees.ego.community;
 
 import java.io.PrintStream;
 import java.util.HashSet;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
 
 
 /**
@@ -35,9 +36,21 @@ public class EgoCommunity
 	/* use a HashSet to prevent duplicates from being added */
 	protected HashSet<Integer> members		=	null;
 	
-	float	id		= (float) -99.9;
+	// the ID is kept as the bits of the float so it can be lowered with a compare-and-set
+	volatile int	idBits		= Float.floatToRawIntBits( (float) -99.9 );
 
-	boolean changed		= false;
+	volatile boolean changed		= false;
+	
+	// mailbox - the smallest ID proposed by a neighbor since the last drain
+	volatile int	proposedBits	= EMPTY;
+	
+	private static final int EMPTY	= Float.floatToRawIntBits(Float.POSITIVE_INFINITY);
+	
+	private static final AtomicIntegerFieldUpdater<EgoCommunity> ID_UPDATER = 
+			AtomicIntegerFieldUpdater.newUpdater(EgoCommunity.class, "idBits");
+	
+	private static final AtomicIntegerFieldUpdater<EgoCommunity> PROPOSED_UPDATER = 
+			AtomicIntegerFieldUpdater.newUpdater(EgoCommunity.class, "proposedBits");
 	
 	public EgoCommunity()
 	{
@@ -51,7 +64,7 @@ public class EgoCommunity
 
 	public float getId()
 	{
-		return id;
+		return Float.intBitsToFloat(idBits);
 	}
 
 
@@ -64,9 +77,78 @@ public class EgoCommunity
 	 */
 	public void setId(float id)
 	{
-		this.id = id;
+		this.idBits = Float.floatToRawIntBits(id);
 		this.changed = true;
 	}
+	
+	
+	/**
+	 * Lower the ID to the new ID if it is smaller.  Safe to call from several 
+	 * threads at once, the smallest ID always wins.  The changed flag is not touched.
+	 * 
+	 * @param newId
+	 * @return T/F - true if this call lowered the ID
+	 */
+	public boolean lowerId(float newId)
+	{
+		while ( true )
+		{
+			int bits = idBits;
+			
+			if ( newId >= Float.intBitsToFloat(bits) )
+				return false;
+			
+			if ( ID_UPDATER.compareAndSet(this, bits, Float.floatToRawIntBits(newId)) )
+				return true;
+		}
+	}
+
+
+	/**
+	 * Leave a proposed ID in the mailbox.  Proposals are coalesced, only the smallest 
+	 * one is kept until the mailbox is drained.
+	 * 
+	 * @param newId
+	 * @return T/F - true if the proposal is the new smallest one, and is smaller than the ID
+	 */
+	public boolean proposeId(float newId)
+	{
+		if ( newId >= getId() )
+			return false;
+		
+		while ( true )
+		{
+			int bits = proposedBits;
+			
+			if ( newId >= Float.intBitsToFloat(bits) )
+				return false;
+			
+			if ( PROPOSED_UPDATER.compareAndSet(this, bits, Float.floatToRawIntBits(newId)) )
+				return true;
+		}
+	}
+	
+	
+	/**
+	 * Empty the mailbox and lower the ID to the smallest proposal. 
+	 * The changed flag is set if the ID went down.
+	 * 
+	 * @return T/F - true if the ID went down
+	 */
+	public boolean drainProposal()
+	{
+		if ( proposedBits == EMPTY )
+			return false;
+		
+		int bits = PROPOSED_UPDATER.getAndSet(this, EMPTY);
+		
+		if ( lowerId(Float.intBitsToFloat(bits)) ) {
+			changed = true;
+			return true;
+		}
+		
+		return false;
+	}
 
 
 	public boolean isChanged()
@@ -105,7 +187,7 @@ public class EgoCommunity
 	
 	public void dump(PrintStream out)
 	{
-		out.print("ID: " + id + " [");
+		out.print("ID: " + getId() + " [");
 		
 		for (int x : members)
 		{
@@ -0,0 +1,172 @@
+/*
+ * 
+ * Copyright 2014 Bradley S. Rees
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License. 
+ *  
+ */
+package edu.fit.brees.ego.community;
+
+import java.util.Arrays;
+
+
+/**
+ * The inverted form of a CommunityTable: the communities of each vertex.  The communities of
+ * the vertex at index u are community[offsets[u]] .. community[offsets[u+1]-1], as places in
+ * the table.  Vertices are given an index in order of their ID.
+ * 
+ * Vertices can be marked as having joined a community after the index was built, so the index 
+ * can answer membership while the communities are being changed.
+ * 
+ * @author bradrees
+ *
+ */
+public class MembershipIndex
+{
+	private final CommunityTable	table;
+	private final int[]				ids;			// the vertex IDs, sorted
+	private final int[]				offsets;
+	private final int[]				community;
+	private final boolean[]			joined;			// joined a community since the index was built
+	
+	
+	/**
+	 * The index over just the members of the table
+	 * 
+	 * @param table
+	 */
+	public MembershipIndex(CommunityTable table)
+	{
+		this(table, distinct(table.getMembers()));
+	}
+	
+	
+	/**
+	 * 
+	 * @param table
+	 * @param vertexIds	- every vertex that can be a member, in any order
+	 */
+	public MembershipIndex(CommunityTable table, int[] vertexIds)
+	{
+		this.table	= table;
+		this.ids	= vertexIds.clone();
+		Arrays.sort(ids);
+		
+		int n = ids.length;
+		int[] members	= table.getMembers();
+		int[] start		= table.getOffsets();
+		
+		offsets	= new int[n + 1];
+		joined	= new boolean[n];
+		
+		for ( int m : members)
+			offsets[index(m) + 1]++;
+		
+		for ( int u = 0; u < n; u++)
+			offsets[u + 1] += offsets[u];
+		
+		community = new int[members.length];
+		int[] next = Arrays.copyOf(offsets, n);
+		
+		for ( int c = 0; c < table.size(); c++) {
+			for ( int p = start[c]; p < start[c + 1]; p++)
+				community[next[index(members[p])]++] = c;
+		}
+	}
+	
+	
+	/**
+	 * 
+	 * @param id
+	 * @return is the vertex in at least one community
+	 */
+	public boolean isMember(int id)
+	{
+		int u = index(id);
+		return offsets[u + 1] > offsets[u] || joined[u];
+	}
+	
+	
+	/**
+	 * Record that a vertex has been added to a community
+	 * 
+	 * @param id
+	 */
+	public void join(int id)
+	{
+		joined[index(id)] = true;
+	}
+	
+	
+	/**
+	 * 
+	 * @param id
+	 * @return the number of communities of the vertex in the table
+	 */
+	public int getCount(int id)
+	{
+		int u = index(id);
+		return offsets[u + 1] - offsets[u];
+	}
+	
+	
+	/**
+	 * 
+	 * @param id
+	 * @param k
+	 * @return the label of the k-th community of the vertex
+	 */
+	public float getLabel(int id, int k)
+	{
+		return table.getLabel(community[offsets[index(id)] + k]);
+	}
+	
+	
+	/**
+	 * 
+	 * @param id
+	 * @param k
+	 * @return the place in the table of the k-th community of the vertex.  The communities 
+	 * 			of a vertex are in the order of the table
+	 */
+	public int getCommunity(int id, int k)
+	{
+		return community[offsets[index(id)] + k];
+	}
+	
+	
+	private static int[] distinct(int[] values)
+	{
+		int[] sorted = values.clone();
+		Arrays.sort(sorted);
+		
+		int count = 0;
+		for ( int x = 0; x < sorted.length; x++) {
+			if ( x == 0 || sorted[x] != sorted[x - 1])
+				sorted[count++] = sorted[x];
+		}
+		
+		return Arrays.copyOf(sorted, count);
+	}
+	
+	
+	private int index(int id)
+	{
+		int u = Arrays.binarySearch(ids, id);
+		
+		if ( u < 0)
+			throw new IllegalArgumentException("Vertex " + id + " is not in the index");
+		
+		return u;
+	}
+}
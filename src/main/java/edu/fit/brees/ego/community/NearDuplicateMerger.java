@@ -0,0 +1,340 @@
+/*
+ * 
+ * Copyright 2014 Bradley S. Rees
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License. 
+ *  
+ */
+package edu.fit.brees.ego.community;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import edu.fit.brees.ego.util.ConcurrentUnionFind;
+import edu.fit.brees.ego.util.Parallel;
+
+
+/**
+ * Merges communities that are nearly the same, those with a Jaccard index at or above the 
+ * threshold.  No pairs are compared unless they are likely to be similar:
+ * 
+ * 	sketch	each community gets a MinHash signature of HASHES values, cut into bands of rows.
+ * 			Only the hash of each band is kept, one array of k ints per band.
+ * 	bucket	two communities are candidates if the hash of any band is equal.  The number of 
+ * 			rows is picked so the chance of being a candidate is high above the threshold and 
+ * 			falls off quickly below it.
+ * 	verify	the Jaccard index of each candidate pair is computed from the sorted members and 
+ * 			the pairs that pass are joined in a union-find.  Every pair of a bucket is compared, 
+ * 			except pairs whose sizes are too far apart to pass, up to BUCKET_PAIRS per bucket.
+ * 			The pairs of a bucket past that are not compared, getTruncated() counts those buckets.
+ * 
+ * Each set of joined communities becomes one community with the smallest label, the same way 
+ * labels are chosen during propagation.  Joining is transitive, so a chain of similar 
+ * communities is merged even if the ends of the chain are not similar.
+ * 
+ * The work is near linear in the number of memberships and runs in parallel.
+ * 
+ * @author bradrees
+ *
+ */
+public class NearDuplicateMerger
+{
+	private static final int	HASHES			= 128;
+	private static final int	BUCKET_PAIRS	= 1 << 16;	// the most pairs compared in one bucket
+	
+	private final ForkJoinPool	pool;
+	private final float			threshold;
+	private final int			rows;
+	private final int			bands;
+	
+	private int					merged		= 0;
+	private final AtomicInteger	truncated	= new AtomicInteger();
+	
+	
+	/**
+	 * 
+	 * @param pool
+	 * @param threshold	- the Jaccard index
+	 */
+	public NearDuplicateMerger(ForkJoinPool pool, float threshold)
+	{
+		this.pool		= pool;
+		this.threshold	= threshold;
+		
+		// the most rows with the S-curve, (1/bands)^(1/rows), still below the threshold
+		int r = 1;
+		while ( r * 2 <= HASHES && Math.pow(1.0 / (HASHES / (r * 2)), 1.0 / (r * 2)) <= threshold)
+			r *= 2;
+		
+		this.rows	= r;
+		this.bands	= HASHES / r;
+	}
+	
+	
+	/**
+	 * 
+	 * @param table
+	 * @return the communities after merging
+	 */
+	public CommunityTable merge(final CommunityTable table)
+	{
+		final int k = table.size();
+		final int[] offsets = table.getOffsets();
+		final int[] members = table.getMembers();
+		
+		truncated.set(0);
+		
+		//--- sketch ---
+		final int[][] bandHash = new int[bands][k];
+		
+		Parallel.forRange(pool, k, Parallel.grain(pool, k), new Parallel.Range() {
+			public void run(int from, int to) {
+				int[] signature = new int[HASHES];
+				
+				for ( int c = from; c < to; c++)
+				{
+					Arrays.fill(signature, Integer.MAX_VALUE);
+					
+					for ( int p = offsets[c]; p < offsets[c + 1]; p++) {
+						for ( int h = 0; h < HASHES; h++) {
+							int v = hash(members[p], h);
+							if ( v < signature[h])
+								signature[h] = v;
+						}
+					}
+					
+					for ( int b = 0; b < bands; b++) {
+						long h = 0x9E3779B97F4A7C15L;
+						for ( int r = 0; r < rows; r++)
+							h = (h ^ signature[b * rows + r]) * 0xC2B2AE3D27D4EB4FL;
+						bandHash[b][c] = (int)(h >>> 32);
+					}
+				}
+			}
+		});
+		
+		//--- bucket and verify, one band at a time in parallel ---
+		final ConcurrentUnionFind joined = new ConcurrentUnionFind(k);
+		
+		Parallel.forRange(pool, bands, 1, new Parallel.Range() {
+			public void run(int from, int to) {
+				long[] keys = new long[k];
+				
+				for ( int b = from; b < to; b++)
+				{
+					// the band key of each community, with the community in the low bits
+					for ( int c = 0; c < k; c++)
+						keys[c] = ((long)bandHash[b][c] << 32) | c;
+					
+					Arrays.sort(keys);
+					
+					int start = 0;
+					for ( int x = 1; x <= k; x++)
+					{
+						if ( x < k && (keys[x] >>> 32) == (keys[start] >>> 32))
+							continue;
+						
+						verify(table, keys, start, x, joined);
+						start = x;
+					}
+				}
+			}
+		});
+		
+		return collapse(table, joined);
+	}
+	
+	
+	/**
+	 * Compare the pairs of one bucket.  The bucket is put in order of size, and a community is
+	 * only compared with the larger ones that have at most 1/threshold of its size, since the 
+	 * Jaccard index is at most the ratio of the sizes.
+	 */
+	private void verify(CommunityTable table, long[] keys, int from, int to, ConcurrentUnionFind joined)
+	{
+		int n = to - from;
+		if ( n < 2)
+			return;
+		
+		// the size in the high bits, the community in the low bits
+		long[] bySize = new long[n];
+		for ( int x = 0; x < n; x++) {
+			int c = (int)keys[from + x];
+			bySize[x] = ((long)table.getSize(c) << 32) | c;
+		}
+		Arrays.sort(bySize);
+		
+		int pairs = 0;
+		
+		for ( int x = 0; x < n; x++)
+		{
+			int size = (int)(bySize[x] >>> 32);
+			
+			for ( int y = x + 1; y < n; y++)
+			{
+				if ( size < threshold * (int)(bySize[y] >>> 32))
+					break;
+				
+				if ( ++pairs > BUCKET_PAIRS) {
+					truncated.incrementAndGet();
+					return;
+				}
+				
+				join(table, (int)bySize[x], (int)bySize[y], joined);
+			}
+		}
+	}
+	
+	
+	private void join(CommunityTable table, int a, int b, ConcurrentUnionFind joined)
+	{
+		if ( ! joined.connected(a, b) && jaccard(table, a, b) >= threshold)
+			joined.union(a, b);
+	}
+	
+	
+	/**
+	 * The Jaccard index of two communities, by a merge of the sorted members
+	 */
+	private static float jaccard(CommunityTable table, int a, int b)
+	{
+		int[] offsets = table.getOffsets();
+		int[] members = table.getMembers();
+		
+		int p = offsets[a], q = offsets[b];
+		int common = 0;
+		
+		while ( p < offsets[a + 1] && q < offsets[b + 1]) {
+			if ( members[p] == members[q]) {
+				common++; p++; q++;
+			} else if ( members[p] < members[q])
+				p++;
+			else
+				q++;
+		}
+		
+		int union = table.getSize(a) + table.getSize(b) - common;
+		return ( union == 0) ? 1 : (float)common / union;
+	}
+	
+	
+	/**
+	 * One community for each set of joined communities
+	 */
+	private CommunityTable collapse(final CommunityTable table, ConcurrentUnionFind joined)
+	{
+		int k = table.size();
+		int[] offsets = table.getOffsets();
+		int[] members = table.getMembers();
+		
+		// number the sets, and the communities of each set
+		int[] setOf		= new int[k];
+		int[] rootSet	= new int[k];
+		Arrays.fill(rootSet, -1);
+		int sets = 0;
+		
+		for ( int c = 0; c < k; c++) {
+			int r = joined.find(c);
+			if ( rootSet[r] < 0)
+				rootSet[r] = sets++;
+			setOf[c] = rootSet[r];
+		}
+		
+		merged = k - sets;
+		
+		if ( merged == 0)
+			return table;
+		
+		float[] labels	= new float[sets];
+		int[] bound		= new int[sets + 1];
+		Arrays.fill(labels, Float.POSITIVE_INFINITY);
+		
+		for ( int c = 0; c < k; c++) {
+			labels[setOf[c]] = Math.min(labels[setOf[c]], table.getLabel(c));
+			bound[setOf[c] + 1] += table.getSize(c);
+		}
+		
+		for ( int s = 0; s < sets; s++)
+			bound[s + 1] += bound[s];
+		
+		// gather the members of each set, then sort and remove the duplicates
+		final int[] gathered = new int[bound[sets]];
+		int[] next = Arrays.copyOf(bound, sets);
+		
+		for ( int c = 0; c < k; c++) {
+			int size = table.getSize(c);
+			System.arraycopy(members, offsets[c], gathered, next[setOf[c]], size);
+			next[setOf[c]] += size;
+		}
+		
+		final int[] start	= bound;
+		final int[] size	= new int[sets];
+		
+		Parallel.forRange(pool, sets, Parallel.grain(pool, sets), new Parallel.Range() {
+			public void run(int from, int to) {
+				for ( int s = from; s < to; s++) {
+					Arrays.sort(gathered, start[s], start[s + 1]);
+					
+					int last = start[s];
+					for ( int p = start[s] + 1; p < start[s + 1]; p++) {
+						if ( gathered[p] != gathered[last])
+							gathered[++last] = gathered[p];
+					}
+					size[s] = last - start[s] + 1;
+				}
+			}
+		});
+		
+		int[] packedOffsets = new int[sets + 1];
+		for ( int s = 0; s < sets; s++)
+			packedOffsets[s + 1] = packedOffsets[s] + size[s];
+		
+		int[] packed = new int[packedOffsets[sets]];
+		for ( int s = 0; s < sets; s++)
+			System.arraycopy(gathered, start[s], packed, packedOffsets[s], size[s]);
+		
+		return new CommunityTable(labels, packedOffsets, packed);
+	}
+	
+	
+	/**
+	 * The h-th hash of a vertex ID
+	 */
+	private static int hash(int v, int h)
+	{
+		long x = (v & 0xFFFFFFFFL) * 0x9E3779B97F4A7C15L + (h + 1) * 0xBF58476D1CE4E5B9L;
+		x = (x ^ (x >>> 31)) * 0x94D049BB133111EBL;
+		return (int)(x ^ (x >>> 29)) & 0x7FFFFFFF;
+	}
+	
+	
+	/**
+	 * 
+	 * @return the number of communities merged away by the last merge
+	 */
+	public int getMerged()
+	{
+		return merged;
+	}
+	
+	
+	/**
+	 * 
+	 * @return the number of buckets of the last merge that had more than BUCKET_PAIRS pairs to compare
+	 */
+	public int getTruncated()
+	{
+		return truncated.get();
+	}
+}
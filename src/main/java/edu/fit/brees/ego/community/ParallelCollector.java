@@ -0,0 +1,480 @@
+/*
+ * 
+ * Copyright 2014 Bradley S. Rees
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License. 
+ *  
+ */
+package edu.fit.brees.ego.community;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.ForkJoinPool;
+
+import edu.fit.brees.ego.graph.EgoVertex;
+import edu.fit.brees.ego.util.Parallel;
+
+
+/**
+ * Collects the final ego-community labels into communities in parallel, with the same result
+ * as adding every ego-community to a CommunityCollector in the order of the vertex list.
+ * 
+ * 	emit	each shard of the vertex list writes (label, vertex, other member) entries into its own 
+ * 			int buffers.  The other member is only set for the ego-communities of two vertices.
+ * 	sort	the entries are put in order of label with a parallel radix sort.  It is stable, 
+ * 			so the entries of a label stay in the order they were emitted
+ * 	group	each run of a label is made into its community (and temporary community)
+ * 
+ * The rule for the ego-communities of two vertices depends on the order: one only joins the 
+ * community of its label if a larger ego-community with that label came before it, otherwise 
+ * it replaces the temporary community of the label.  With the entries of a label in order that 
+ * is decided from the first larger entry of the run.
+ * 
+ * @author bradrees
+ *
+ */
+public class ParallelCollector
+{
+	public static final int		NONE	= Integer.MIN_VALUE;	// no other member
+	private static final int	RADIX	= 256;
+	
+	private final ForkJoinPool	pool;
+	
+	private CommunityTable	communities		= null;
+	private CommunityTable	tmpCommunities	= null;
+	
+	
+	public ParallelCollector(ForkJoinPool pool)
+	{
+		this.pool = pool;
+	}
+	
+	
+	/**
+	 * Collect the communities of the vertices
+	 * 
+	 * @param vertices
+	 */
+	public void collect(Collection<EgoVertex> vertices)
+	{
+		final EgoVertex[] list = vertices.toArray(new EgoVertex[vertices.size()]);
+		
+		//--- emit ---
+		final int shards = pool.getParallelism() * 4;
+		final Shard[] shard = new Shard[shards];
+		
+		Parallel.forRange(pool, shards, 1, new Parallel.Range() {
+			public void run(int from, int to) {
+				for ( int s = from; s < to; s++) {
+					shard[s] = new Shard();
+					shard[s].emit(list, (int)((long)list.length * s / shards), (int)((long)list.length * (s + 1) / shards));
+				}
+			}
+		});
+		
+		final int[] start = new int[shards + 1];
+		for ( int s = 0; s < shards; s++)
+			start[s + 1] = start[s] + shard[s].count;
+		
+		final int n = start[shards];
+		final int[] key		= new int[n];
+		final int[] vertex	= new int[n];
+		final int[] other	= new int[n];
+		
+		Parallel.forRange(pool, shards, 1, new Parallel.Range() {
+			public void run(int from, int to) {
+				for ( int s = from; s < to; s++) {
+					System.arraycopy(shard[s].key, 0, key, start[s], shard[s].count);
+					System.arraycopy(shard[s].vertex, 0, vertex, start[s], shard[s].count);
+					System.arraycopy(shard[s].other, 0, other, start[s], shard[s].count);
+					shard[s] = null;
+				}
+			}
+		});
+		
+		collect(key, vertex, other);
+	}
+	
+	
+	/**
+	 * Collect entries that were emitted somewhere else, e.g. by the workers of a distributed run
+	 * 
+	 * @param key		- the bits of the label
+	 * @param vertex
+	 * @param other		- the other member of an ego-community of two vertices, otherwise NONE
+	 */
+	public void collect(int[] key, int[] vertex, int[] other)
+	{
+		//--- sort ---
+		int[] order = sort(key);
+		
+		//--- group ---
+		group(key, vertex, other, order);
+	}
+	
+	
+	/**
+	 * Stable LSD radix sort of the keys, 8 bits at a time
+	 * 
+	 * @param key	- not changed
+	 * @return the positions of the keys in sorted order
+	 */
+	private int[] sort(final int[] key)
+	{
+		final int n = key.length;
+		final int chunks = chunks(n);
+		
+		int[] keyA = key.clone();
+		int[] idxA = new int[n];
+		int[] keyB = new int[n];
+		int[] idxB = new int[n];
+		
+		for ( int x = 0; x < n; x++)
+			idxA[x] = x;
+		
+		for ( int shift = 0; shift < 32; shift += 8)
+		{
+			final int[] srcKey = keyA, srcIdx = idxA, dstKey = keyB, dstIdx = idxB;
+			final int sh = shift;
+			final int[][] count = new int[chunks][RADIX];
+			
+			// histogram of each chunk
+			Parallel.forRange(pool, chunks, 1, new Parallel.Range() {
+				public void run(int from, int to) {
+					for ( int c = from; c < to; c++) {
+						for ( int x = lo(c, chunks, n); x < lo(c + 1, chunks, n); x++)
+							count[c][(srcKey[x] >>> sh) & (RADIX - 1)]++;
+					}
+				}
+			});
+			
+			// where each chunk writes each digit, the pass is skipped if all the keys have the same digit
+			boolean single = false;
+			int next = 0;
+			
+			for ( int d = 0; d < RADIX; d++) {
+				int first = next;
+				for ( int c = 0; c < chunks; c++) {
+					int t = count[c][d];
+					count[c][d] = next;
+					next += t;
+				}
+				if ( next - first == n)
+					single = true;
+			}
+			
+			if ( single)
+				continue;
+			
+			Parallel.forRange(pool, chunks, 1, new Parallel.Range() {
+				public void run(int from, int to) {
+					for ( int c = from; c < to; c++) {
+						int[] at = count[c];
+						for ( int x = lo(c, chunks, n); x < lo(c + 1, chunks, n); x++) {
+							int p = at[(srcKey[x] >>> sh) & (RADIX - 1)]++;
+							dstKey[p] = srcKey[x];
+							dstIdx[p] = srcIdx[x];
+						}
+					}
+				}
+			});
+			
+			keyB = srcKey;	keyA = dstKey;
+			idxB = srcIdx;	idxA = dstIdx;
+		}
+		
+		return idxA;
+	}
+	
+	
+	/**
+	 * Make the communities from the runs of each label
+	 * 
+	 * @param key
+	 * @param vertex
+	 * @param other
+	 * @param order	- the entries in order of label
+	 */
+	private void group(final int[] key, final int[] vertex, final int[] other, final int[] order)
+	{
+		final int n = order.length;
+		final int chunks = chunks(n);
+		
+		// the start of each run
+		final int[] startsIn = new int[chunks + 1];
+		
+		Parallel.forRange(pool, chunks, 1, new Parallel.Range() {
+			public void run(int from, int to) {
+				for ( int c = from; c < to; c++) {
+					for ( int x = lo(c, chunks, n); x < lo(c + 1, chunks, n); x++) {
+						if ( x == 0 || key[order[x]] != key[order[x - 1]])
+							startsIn[c + 1]++;
+					}
+				}
+			}
+		});
+		
+		for ( int c = 0; c < chunks; c++)
+			startsIn[c + 1] += startsIn[c];
+		
+		final int runs = startsIn[chunks];
+		final int[] runStart = new int[runs + 1];
+		runStart[runs] = n;
+		
+		Parallel.forRange(pool, chunks, 1, new Parallel.Range() {
+			public void run(int from, int to) {
+				for ( int c = from; c < to; c++) {
+					int r = startsIn[c];
+					for ( int x = lo(c, chunks, n); x < lo(c + 1, chunks, n); x++) {
+						if ( x == 0 || key[order[x]] != key[order[x - 1]])
+							runStart[r++] = x;
+					}
+				}
+			}
+		});
+		
+		// the first larger ego-community of each run decides how the pairs are used
+		final int[] bound	= new int[runs + 1];	// most members of the community, then its place
+		final int[] tmp		= new int[runs];		// the entry of the temporary community, -1 if none
+		
+		Parallel.forRange(pool, runs, 1024, new Parallel.Range() {
+			public void run(int from, int to) {
+				for ( int r = from; r < to; r++)
+				{
+					int first = -1, count = 0;
+					tmp[r] = -1;
+					
+					for ( int x = runStart[r]; x < runStart[r + 1]; x++)
+					{
+						int e = order[x];
+						
+						if ( other[e] == NONE) {
+							if ( first < 0)
+								first = x;
+							count++;
+						}
+						else if ( first >= 0)
+							count += 2;
+						else
+							tmp[r] = e;
+					}
+					
+					bound[r + 1] = count;
+				}
+			}
+		});
+		
+		for ( int r = 0; r < runs; r++)
+			bound[r + 1] += bound[r];
+		
+		// fill, sort and remove the duplicates of each community in place
+		final int[] members	= new int[bound[runs]];
+		final int[] size	= new int[runs];
+		
+		Parallel.forRange(pool, runs, 1024, new Parallel.Range() {
+			public void run(int from, int to) {
+				for ( int r = from; r < to; r++)
+				{
+					int p = bound[r];
+					boolean seen = false;
+					
+					for ( int x = runStart[r]; x < runStart[r + 1]; x++)
+					{
+						int e = order[x];
+						
+						if ( other[e] == NONE) {
+							members[p++] = vertex[e];
+							seen = true;
+						}
+						else if ( seen ) {
+							members[p++] = vertex[e];
+							members[p++] = other[e];
+						}
+					}
+					
+					size[r] = unique(members, bound[r], p);
+				}
+			}
+		});
+		
+		communities = compact(key, order, runStart, members, bound, size);
+		
+		// the temporary communities
+		final int[] tmpBound	= new int[runs + 1];
+		final int[] tmpSize		= new int[runs];
+		
+		for ( int r = 0; r < runs; r++)
+			tmpBound[r + 1] = tmpBound[r] + ( tmp[r] < 0 ? 0 : 2);
+		
+		final int[] tmpMembers = new int[tmpBound[runs]];
+		
+		Parallel.forRange(pool, runs, 1024, new Parallel.Range() {
+			public void run(int from, int to) {
+				for ( int r = from; r < to; r++)
+				{
+					if ( tmp[r] >= 0) {
+						tmpMembers[tmpBound[r]]		= vertex[tmp[r]];
+						tmpMembers[tmpBound[r] + 1]	= other[tmp[r]];
+						tmpSize[r] = unique(tmpMembers, tmpBound[r], tmpBound[r] + 2);
+					}
+				}
+			}
+		});
+		
+		tmpCommunities = compact(key, order, runStart, tmpMembers, tmpBound, tmpSize);
+	}
+	
+	
+	/**
+	 * Pack the non-empty communities of the runs
+	 * 
+	 * @return
+	 */
+	private CommunityTable compact(final int[] key, final int[] order, final int[] runStart, 
+			final int[] members, final int[] bound, final int[] size)
+	{
+		int runs = size.length;
+		
+		int count = 0;
+		for ( int r = 0; r < runs; r++) {
+			if ( size[r] > 0)
+				count++;
+		}
+		
+		final int[] runOf		= new int[count];
+		final float[] labels	= new float[count];
+		final int[] offsets		= new int[count + 1];
+		
+		int c = 0;
+		for ( int r = 0; r < runs; r++) {
+			if ( size[r] > 0) {
+				runOf[c] 		= r;
+				labels[c]		= Float.intBitsToFloat(key[order[runStart[r]]]);
+				offsets[c + 1]	= offsets[c] + size[r];
+				c++;
+			}
+		}
+		
+		final int[] packed = new int[offsets[count]];
+		
+		Parallel.forRange(pool, count, 1024, new Parallel.Range() {
+			public void run(int from, int to) {
+				for ( int x = from; x < to; x++)
+					System.arraycopy(members, bound[runOf[x]], packed, offsets[x], offsets[x + 1] - offsets[x]);
+			}
+		});
+		
+		return new CommunityTable(labels, offsets, packed);
+	}
+	
+	
+	/**
+	 * Sort a range and move the distinct values to the front
+	 * 
+	 * @return the number of distinct values
+	 */
+	private static int unique(int[] a, int from, int to)
+	{
+		if ( to == from)
+			return 0;
+		
+		Arrays.sort(a, from, to);
+		
+		int last = from;
+		for ( int x = from + 1; x < to; x++) {
+			if ( a[x] != a[last])
+				a[++last] = a[x];
+		}
+		
+		return last - from + 1;
+	}
+	
+	
+	private int chunks(int n)
+	{
+		return Math.max(1, Math.min(pool.getParallelism() * 4, n / 4096));
+	}
+	
+	
+	/**
+	 * The start of chunk c of n entries
+	 */
+	private static int lo(int c, int chunks, int n)
+	{
+		return (int)((long)n * c / chunks);
+	}
+	
+	
+	public CommunityTable getCommunities() {
+		return communities;
+	}
+	
+	
+	public CommunityTable getTmpCommunities() {
+		return tmpCommunities;
+	}
+	
+	
+	/**
+	 * The entries of one shard of the vertex list
+	 */
+	private static class Shard
+	{
+		int[]	key		= new int[1024];
+		int[]	vertex	= new int[1024];
+		int[]	other	= new int[1024];
+		int		count	= 0;
+		
+		
+		void emit(EgoVertex[] list, int from, int to)
+		{
+			for ( int v = from; v < to; v++)
+			{
+				int vertexID = list[v].getId();
+				
+				for ( EgoCommunity ec : list[v].getAllEgoCommunity())
+				{
+					int o = NONE;
+					
+					if ( ec.size() == 2) {
+						for ( Integer m : ec.getMembers()) {
+							if ( m != vertexID)
+								o = m;
+						}
+					}
+					
+					add(ec.getId(), vertexID, o);
+				}
+				
+				// the special neighbors join the community of the neighbor's ego-community
+				for ( EgoCommunity ec : list[v].getSpecialGroups())
+					add(ec.getId(), vertexID, NONE);
+			}
+		}
+		
+		
+		private void add(float label, int v, int o)
+		{
+			if ( count == key.length) {
+				key		= Arrays.copyOf(key, count * 2);
+				vertex	= Arrays.copyOf(vertex, count * 2);
+				other	= Arrays.copyOf(other, count * 2);
+			}
+			
+			key[count]		= Float.floatToIntBits(label);
+			vertex[count]	= v;
+			other[count]	= o;
+			count++;
+		}
+	}
+}
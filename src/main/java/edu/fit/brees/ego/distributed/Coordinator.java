@@ -0,0 +1,416 @@
+/*
+ * 
+ * Copyright 2014 Bradley S. Rees
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License. 
+ *  
+ */
+package edu.fit.brees.ego.distributed;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+import edu.fit.brees.ego.community.ParallelCollector;
+import edu.fit.brees.ego.driver.FastEgoDriver;
+
+
+/**
+ * Runs the detection on several worker processes on this machine.
+ * 
+ * The Coordinator listens on a local port, starts the worker JVMs and gives each one its 
+ * partition.  It never loads the graph, it only routes the MessageBatch(es) between the workers 
+ * and runs the supersteps until no ID crosses a partition boundary.  At the end each worker sends
+ * the (label, vertex, other member) entries of its own vertices, and the Coordinator only merges 
+ * them and groups them by label with the ParallelCollector.  The graph is never rebuilt here.
+ * 
+ * @author bradrees
+ *
+ */
+public class Coordinator
+{
+	// commands sent to the workers before each superstep
+	public static final int	STEP	= 1;
+	public static final int	DONE	= 2;
+	
+	// how long to wait for the workers to connect, and for a worker to answer
+	private static final int	CONNECT_TIMEOUT	= 60 * 1000;
+	private static final int	READ_TIMEOUT	= 30 * 60 * 1000;
+	private static final int	POLL_INTERVAL	= 500;
+	
+	private final String	fileName;
+	private final int		workers;
+	private final float		threshold;
+	private final int		startIdx;
+	private final int		numberOfThreads;
+	private final boolean	verbose;
+	
+	private ServerSocket		server;
+	private Process[]			process;
+	private Socket[]			socket;
+	private DataInputStream[]	in;
+	private DataOutputStream[]	out;
+	
+	private volatile String		failure	= null;		// why a worker failed, set by the watchdog
+	
+	private int		numberOfNodes	= 0;
+	private long	numberOfEdges	= 0;
+	private int		iterationCount	= 0;
+	
+	// the (label, vertex, other member) entries of all the workers, until they are collected
+	private int[]	key		= null;
+	private int[]	vertex	= null;
+	private int[]	other	= null;
+	
+	
+	/**
+	 * 
+	 * @param fileName
+	 * @param workers			- the number of worker processes
+	 * @param threshold
+	 * @param startIdx
+	 * @param numberOfThreads	- threads per worker
+	 * @param verbose
+	 */
+	public Coordinator(String fileName, int workers, float threshold, int startIdx, int numberOfThreads, boolean verbose)
+	{
+		this.fileName			= fileName;
+		this.workers			= workers;
+		this.threshold			= threshold;
+		this.startIdx			= startIdx;
+		this.numberOfThreads	= numberOfThreads;
+		this.verbose			= verbose;
+	}
+	
+	
+	/**
+	 * Start the workers and run the detection.  If a worker process dies or stops answering, 
+	 * the other workers are stopped and the error is thrown.
+	 * 
+	 * @throws Exception
+	 */
+	public void run() throws Exception
+	{
+		server = new ServerSocket(0, workers, InetAddress.getLoopbackAddress());
+		server.setSoTimeout(CONNECT_TIMEOUT);
+		
+		process = new Process[workers];
+		socket	= new Socket[workers];
+		in		= new DataInputStream[workers];
+		out		= new DataOutputStream[workers];
+		
+		Thread watchdog = null;
+		
+		try
+		{
+			for ( int w = 0; w < workers; w++)
+				process[w] = startWorker(server.getLocalPort());
+			
+			watchdog = startWatchdog();
+			
+			for ( int w = 0; w < workers; w++)
+			{
+				socket[w] = server.accept();
+				socket[w].setSoTimeout(READ_TIMEOUT);
+				in[w] 	= new DataInputStream(new BufferedInputStream(socket[w].getInputStream()));
+				out[w]	= new DataOutputStream(new BufferedOutputStream(socket[w].getOutputStream()));
+				
+				out[w].writeInt(w);
+				out[w].writeInt(workers);
+				out[w].writeFloat(threshold);
+				out[w].writeInt(startIdx);
+				out[w].writeUTF(new File(fileName).getAbsolutePath());
+				out[w].flush();
+			}
+			
+			if ( verbose)
+				System.out.println("\tStarted " + workers + " workers");
+			
+			superstep();
+			
+			for ( int w = 0; w < workers; w++) {
+				socket[w].close();
+				process[w].waitFor();
+			}
+		}
+		catch (IOException e)
+		{
+			// a lost connection is most often a worker that died, give it a moment to be seen
+			for ( int x = 0; x < 4 && failure == null; x++) {
+				checkWorkers();
+				Thread.sleep(POLL_INTERVAL);
+			}
+			
+			String why = ( failure != null) ? failure : e.toString();
+			throw new IOException("Distributed run failed: " + why, e);
+		}
+		finally
+		{
+			if ( watchdog != null)
+				watchdog.interrupt();
+			
+			closeAll();
+			
+			for ( Process p : process) {
+				if ( p != null && exitCode(p) == null)
+					p.destroy();
+			}
+		}
+	}
+	
+	
+	/**
+	 * Route the messages between the workers until they are done, then read the results
+	 */
+	private void superstep() throws IOException
+	{
+		// the sizes for the special test
+		sendAll(MessageBatch.route(readAll()), -1);
+		
+		// the supersteps
+		while ( true )
+		{
+			MessageBatch[] batches = readAll();
+			++iterationCount;
+			
+			int total = 0;
+			for ( MessageBatch b : batches)
+				total += b.size();
+			
+			if ( verbose)
+				System.out.println("\tDone Superstep " + iterationCount + "  Boundary messages = " + total);
+			
+			if ( total == 0) {
+				for ( int w = 0; w < workers; w++) {
+					out[w].writeInt(DONE);
+					out[w].flush();
+				}
+				break;
+			}
+			
+			sendAll(MessageBatch.route(batches), STEP);
+		}
+		
+		// the special vertices
+		sendAll(MessageBatch.route(readAll()), -1);
+		
+		readResults();
+	}
+	
+	
+	/**
+	 * Poll the worker processes.  When one exits with an error the sockets are closed, so the 
+	 * accept or read the Coordinator is blocked in fails right away.
+	 */
+	private Thread startWatchdog()
+	{
+		Thread t = new Thread() {
+			public void run() {
+				try
+				{
+					while ( ! checkWorkers())
+						Thread.sleep(POLL_INTERVAL);
+				}
+				catch (InterruptedException e)
+				{
+					// the run is over
+				}
+			}
+		};
+		
+		t.setDaemon(true);
+		t.start();
+		return t;
+	}
+	
+	
+	/**
+	 * Record the first worker process that exited with an error, and close the sockets
+	 * 
+	 * @return true if a worker failed
+	 */
+	private synchronized boolean checkWorkers()
+	{
+		for ( int p = 0; p < workers && failure == null; p++)
+		{
+			Integer code = exitCode(process[p]);
+			
+			if ( code != null && code != 0) {
+				failure = "worker process " + p + " exited with code " + code + " (see its output above)";
+				closeAll();
+			}
+		}
+		
+		return failure != null;
+	}
+	
+	
+	/**
+	 * Close the server and the worker sockets, from either thread
+	 */
+	private synchronized void closeAll()
+	{
+		try
+		{
+			if ( server != null)
+				server.close();
+			
+			for ( Socket s : socket) {
+				if ( s != null)
+					s.close();
+			}
+		}
+		catch (IOException e)
+		{
+			// closing anyway
+		}
+	}
+	
+	
+	/**
+	 * 
+	 * @param p
+	 * @return the exit code, or null if the process is still running
+	 */
+	private static Integer exitCode(Process p)
+	{
+		try
+		{
+			return p.exitValue();
+		}
+		catch (IllegalThreadStateException e)
+		{
+			return null;
+		}
+	}
+	
+	
+	private Process startWorker(int port) throws IOException
+	{
+		String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+		
+		ProcessBuilder pb = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"), 
+				FastEgoDriver.class.getName(), "-j", "localhost:" + port, "-t", Integer.toString(numberOfThreads));
+		pb.inheritIO();
+		
+		return pb.start();
+	}
+	
+	
+	private MessageBatch[] readAll() throws IOException
+	{
+		MessageBatch[] batches = new MessageBatch[workers];
+		
+		for ( int w = 0; w < workers; w++)
+			batches[w] = MessageBatch.read(in[w]);
+		
+		return batches;
+	}
+	
+	
+	private void sendAll(MessageBatch[] batches, int command) throws IOException
+	{
+		for ( int w = 0; w < workers; w++) {
+			if ( command > 0)
+				out[w].writeInt(command);
+			
+			batches[w].write(out[w]);
+			out[w].flush();
+		}
+	}
+	
+	
+	/**
+	 * Merge the entries of the workers by descending vertex ID.  That is the order the vertex 
+	 * Hashtable of a single process gives for the IDs the DataReader makes, and the collection 
+	 * depends on the order of the entries of a label.
+	 */
+	private void readResults() throws IOException
+	{
+		MessageBatch[] result = new MessageBatch[workers];
+		int total = 0;
+		
+		for ( int w = 0; w < workers; w++) {
+			numberOfNodes += in[w].readInt();
+			numberOfEdges += in[w].readInt();
+			result[w] = MessageBatch.read(in[w]);
+			total += result[w].size();
+		}
+		
+		key		= new int[total];
+		vertex	= new int[total];
+		other	= new int[total];
+		
+		int[] next = new int[workers];
+		int n = 0;
+		
+		while ( n < total)
+		{
+			// the worker with the largest next vertex
+			int best = -1;
+			for ( int w = 0; w < workers; w++) {
+				if ( next[w] < result[w].size() && 
+						( best < 0 || result[w].getSource(next[w]) > result[best].getSource(next[best])))
+					best = w;
+			}
+			
+			MessageBatch b = result[best];
+			int id = b.getSource(next[best]);
+			
+			for ( int m = next[best]; m < b.size() && b.getSource(m) == id; m++) {
+				key[n]		= b.getTarget(m);
+				vertex[n]	= id;
+				other[n]	= b.getValue(m);
+				n++;
+				next[best]++;
+			}
+			
+			if ( next[best] == b.size())
+				result[best] = new MessageBatch();		// let the finished batch go
+		}
+	}
+	
+	
+	/**
+	 * Group the entries of the workers into communities
+	 * 
+	 * @param collector
+	 */
+	public void collect(ParallelCollector collector)
+	{
+		collector.collect(key, vertex, other);
+		
+		key 	= null;
+		vertex	= null;
+		other	= null;
+	}
+	
+	
+	public int getNumberOfNodes() {
+		return numberOfNodes;
+	}
+	
+	public long getNumberOfEdges() {
+		return numberOfEdges;
+	}
+	
+	public int getIterationCount() {
+		return iterationCount;
+	}
+}
@@ -0,0 +1,141 @@
+/*
+ * 
+ * Copyright 2014 Bradley S. Rees
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License. 
+ *  
+ */
+package edu.fit.brees.ego.distributed;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+
+/**
+ * A batch of messages exchanged between the workers.  A message is three ints:
+ * 
+ * 	target	- the vertex the message is for, it decides which worker gets the message
+ * 	source	- the neighbor of the target the message is about
+ * 	value	- a size or the bits of a float ID
+ * 
+ * On the wire a batch is the number of messages followed by the packed ints.
+ * 
+ * @author bradrees
+ *
+ */
+public class MessageBatch
+{
+	private int[]	data	= new int[3 * 64];
+	private int		size	= 0;
+	
+	
+	public MessageBatch()
+	{
+		;
+	}
+	
+	
+	/**
+	 * The worker that owns the vertex
+	 * 
+	 * @param id
+	 * @param workers
+	 * @return
+	 */
+	public static int owner(int id, int workers)
+	{
+		return (id & 0x7fffffff) % workers;
+	}
+	
+	
+	public void add(int target, int source, int value)
+	{
+		if ( 3 * size == data.length)
+			data = Arrays.copyOf(data, data.length * 2);
+		
+		data[3 * size]		= target;
+		data[3 * size + 1]	= source;
+		data[3 * size + 2]	= value;
+		size++;
+	}
+	
+	
+	public int size()
+	{
+		return size;
+	}
+	
+	public int getTarget(int m)
+	{
+		return data[3 * m];
+	}
+	
+	public int getSource(int m)
+	{
+		return data[3 * m + 1];
+	}
+	
+	public int getValue(int m)
+	{
+		return data[3 * m + 2];
+	}
+	
+	
+	public void write(DataOutputStream out) throws IOException
+	{
+		out.writeInt(size);
+		
+		for ( int x = 0; x < 3 * size; x++)
+			out.writeInt(data[x]);
+	}
+	
+	
+	public static MessageBatch read(DataInputStream in) throws IOException
+	{
+		MessageBatch batch = new MessageBatch();
+		
+		int size = in.readInt();
+		batch.data = new int[Math.max(3, 3 * size)];
+		
+		for ( int x = 0; x < 3 * size; x++)
+			batch.data[x] = in.readInt();
+		
+		batch.size = size;
+		return batch;
+	}
+	
+	
+	/**
+	 * Sort the messages of all the batches by the worker that owns the target
+	 * 
+	 * @param batches
+	 * @return one batch per worker
+	 */
+	public static MessageBatch[] route(MessageBatch[] batches)
+	{
+		int workers = batches.length;
+		
+		MessageBatch[] routed = new MessageBatch[workers];
+		for ( int w = 0; w < workers; w++)
+			routed[w] = new MessageBatch();
+		
+		for ( MessageBatch b : batches) {
+			for ( int m = 0; m < b.size; m++)
+				routed[owner(b.getTarget(m), workers)].add(b.getTarget(m), b.getSource(m), b.getValue(m));
+		}
+		
+		return routed;
+	}
+}
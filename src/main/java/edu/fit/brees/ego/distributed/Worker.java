@@ -0,0 +1,480 @@
+/*
+ * 
+ * Copyright 2014 Bradley S. Rees
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License. 
+ *  
+ */
+package edu.fit.brees.ego.distributed;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Hashtable;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import edu.fit.brees.ego.community.EgoCommunity;
+import edu.fit.brees.ego.community.ParallelCollector;
+import edu.fit.brees.ego.engine.ForkJoinEngine;
+import edu.fit.brees.ego.graph.EgoVertex;
+import edu.fit.brees.ego.graph.ProcessingStatus;
+import edu.fit.brees.ego.loader.PartitionReader;
+
+
+/**
+ * One worker process of the distributed mode.
+ * 
+ * The worker loads its partition of the graph, finds the ego-communities of the vertices it
+ * owns, and then answers the Coordinator.  Everything that crosses a partition boundary goes 
+ * through the Coordinator as a MessageBatch:
+ * 
+ * 	sizes		- the size of my ego-community holding a ghost, so both ends can run the special test 
+ * 	labels		- the changed IDs of the ego-communities holding a ghost, once per superstep
+ * 	specials	- the final ID of my ego-community holding a ghost that is special
+ * 	result		- the (label, vertex, other member) entries of every owned vertex
+ * 
+ * Inside a partition the IDs are propagated on flat arrays, the same as the LabelEngine(s).
+ * 
+ * @author bradrees
+ *
+ */
+public class Worker
+{
+	private final String	host;
+	private final int		port;
+	private final int		numberOfThreads;
+	
+	private DataInputStream		in;
+	private DataOutputStream	out;
+	
+	private int		workers;
+	private float	threshold;
+	
+	// the owned vertices, sorted by ID
+	private EgoVertex[]	vertex;
+	private Map<Integer, Integer>	localIndex	= new HashMap<>();
+	
+	// the neighbors of each owned vertex, sorted by ID
+	private int[]		offsets;
+	private int[]		adj;				// neighbor ID
+	private int[]		reverse;			// position of the reverse edge, -1 for a ghost
+	private int[]		edgeSlot;			// slot of my ego-community holding the neighbor
+	private int[]		theirSize;			// size of the neighbor's ego-community holding me
+	private boolean[]	similar;
+	private float[]		specialLabel;
+	
+	// the sorted neighbors of the ghosts
+	private Map<Integer, int[]>	ghostAdj	= new HashMap<>();
+	
+	// the ego-communities
+	private int[]		slotOffsets;
+	private int[]		slotSize;
+	private float[]		labels;
+	private boolean[]	changed;
+	private boolean[]	active;
+	
+	private int		numberOfEdges	= 0;
+	
+	
+	public Worker(String host, int port, int numberOfThreads)
+	{
+		this.host				= host;
+		this.port				= port;
+		this.numberOfThreads	= numberOfThreads;
+	}
+	
+	
+	public void run() throws Exception
+	{
+		Socket socket = new Socket(host, port);
+		
+		in 	= new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+		out	= new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+		
+		int worker		= in.readInt();
+		workers			= in.readInt();
+		threshold		= in.readFloat();
+		int startIdx	= in.readInt();
+		String fileName	= in.readUTF();
+		
+		load(fileName, worker, startIdx);
+		
+		exchangeSizes();
+		propagate();
+		exchangeSpecials();
+		sendResult();
+		
+		socket.close();
+	}
+	
+	
+	/**
+	 * Load the partition, find the ego-communities of the owned vertices and lay them out flat 
+	 */
+	private void load(String fileName, int worker, int startIdx) throws Exception
+	{
+		ProcessingStatus status = new ProcessingStatus();
+		
+		Map<Integer, EgoVertex> owned	= new Hashtable<>();
+		Map<Integer, EgoVertex> ghosts	= new Hashtable<>();
+		
+		PartitionReader reader = new PartitionReader(worker, workers, startIdx, threshold, status);
+		reader.read(fileName, owned, ghosts);
+		numberOfEdges = reader.getNumberOfEdges();
+		
+		ForkJoinEngine engine = new ForkJoinEngine(numberOfThreads, status, false);
+		engine.extract(owned.values());
+		engine.shutdown();
+		
+		for ( EgoVertex g : ghosts.values())
+			ghostAdj.put(g.getId(), sortedNeighbors(g));
+		
+		int n = owned.size();
+		vertex = owned.values().toArray(new EgoVertex[n]);
+		Arrays.sort(vertex, new Comparator<EgoVertex>() {
+			public int compare(EgoVertex a, EgoVertex b) {
+				return Integer.compare(a.getId(), b.getId());
+			}
+		});
+		
+		for ( int x = 0; x < n; x++)
+			localIndex.put(vertex[x].getId(), x);
+		
+		offsets		= new int[n + 1];
+		slotOffsets	= new int[n + 1];
+		
+		for ( int x = 0; x < n; x++) {
+			offsets[x + 1]		= offsets[x] + sortedNeighbors(vertex[x]).length;
+			slotOffsets[x + 1]	= slotOffsets[x] + vertex[x].getAllEgoCommunity().size();
+		}
+		
+		adj				= new int[offsets[n]];
+		reverse			= new int[offsets[n]];
+		edgeSlot		= new int[offsets[n]];
+		theirSize		= new int[offsets[n]];
+		similar			= new boolean[offsets[n]];
+		specialLabel	= new float[offsets[n]];
+		
+		slotSize	= new int[slotOffsets[n]];
+		labels		= new float[slotOffsets[n]];
+		
+		IdentityHashMap<EgoCommunity, Integer> slotOf = new IdentityHashMap<>();
+		
+		for ( int x = 0; x < n; x++)
+		{
+			slotOf.clear();
+			int slot = slotOffsets[x];
+			
+			for ( EgoCommunity ec : vertex[x].getAllEgoCommunity()) {
+				slotOf.put(ec, slot);
+				slotSize[slot]	= ec.size();
+				labels[slot]	= ec.getId();
+				slot++;
+			}
+			
+			int[] nbr = sortedNeighbors(vertex[x]);
+			System.arraycopy(nbr, 0, adj, offsets[x], nbr.length);
+			
+			for ( int p = offsets[x]; p < offsets[x + 1]; p++)
+				edgeSlot[p] = slotOf.get(vertex[x].findEgo(adj[p]));
+		}
+		
+		for ( int x = 0; x < n; x++)
+		{
+			for ( int p = offsets[x]; p < offsets[x + 1]; p++)
+			{
+				Integer y = localIndex.get(adj[p]);
+				reverse[p] = ( y == null) ? -1 : position(y, vertex[x].getId());
+				
+				if ( y != null)
+					theirSize[p] = slotSize[edgeSlot[reverse[p]]];
+			}
+		}
+	}
+	
+	
+	/**
+	 * Send the sizes needed by the other end of each boundary edge, then run the special test
+	 */
+	private void exchangeSizes() throws IOException
+	{
+		MessageBatch batch = new MessageBatch();
+		
+		for ( int x = 0; x < vertex.length; x++) {
+			for ( int p = offsets[x]; p < offsets[x + 1]; p++) {
+				if ( reverse[p] < 0)
+					batch.add(adj[p], vertex[x].getId(), slotSize[edgeSlot[p]]);
+			}
+		}
+		
+		send(batch);
+		
+		batch = MessageBatch.read(in);
+		
+		for ( int m = 0; m < batch.size(); m++) {
+			int p = position(localIndex.get(batch.getTarget(m)), batch.getSource(m));
+			theirSize[p] = batch.getValue(m);
+		}
+		
+		for ( int x = 0; x < vertex.length; x++)
+		{
+			for ( int p = offsets[x]; p < offsets[x + 1]; p++)
+			{
+				int common;
+				
+				// the two views share the two ends and every common neighbor
+				if ( reverse[p] < 0) {
+					int[] theirs = ghostAdj.get(adj[p]);
+					common = 2 + commonCount(adj, offsets[x], offsets[x + 1], theirs, 0, theirs.length);
+				} else {
+					int y = localIndex.get(adj[p]);
+					common = 2 + commonCount(adj, offsets[x], offsets[x + 1], adj, offsets[y], offsets[y + 1]);
+				}
+				
+				int minSize = (int)( (float)Math.min(slotSize[edgeSlot[p]], theirSize[p]) * threshold);
+				
+				similar[p] = common >= minSize;
+			}
+		}
+	}
+	
+	
+	/**
+	 * Propagate inside the partition each superstep, until the Coordinator says no label
+	 * crossed a boundary
+	 */
+	private void propagate() throws IOException
+	{
+		int n = vertex.length;
+		
+		changed	= new boolean[labels.length];
+		active	= new boolean[n];
+		Arrays.fill(changed, true);
+		
+		int[] work = new int[Math.max(1, n)];
+		for ( int x = 0; x < n; x++) {
+			work[x] = x;
+			active[x] = true;
+		}
+		
+		send(runLocal(work, n));
+		
+		while ( in.readInt() == Coordinator.STEP)
+		{
+			MessageBatch batch = MessageBatch.read(in);
+			int size = 0;
+			
+			for ( int m = 0; m < batch.size(); m++)
+			{
+				int y = localIndex.get(batch.getTarget(m));
+				int t = edgeSlot[position(y, batch.getSource(m))];
+				float label = Float.intBitsToFloat(batch.getValue(m));
+				
+				if ( label < labels[t]) {
+					labels[t] = label;
+					changed[t] = true;
+					
+					if ( ! active[y]) {
+						active[y] = true;
+						work[size++] = y;
+					}
+				}
+			}
+			
+			send(runLocal(work, size));
+		}
+	}
+	
+	
+	/**
+	 * Run the active vertices until nothing changes inside the partition
+	 * 
+	 * @return the changes for the ghosts
+	 */
+	private MessageBatch runLocal(int[] work, int size)
+	{
+		MessageBatch batch = new MessageBatch();
+		
+		while ( size > 0)
+		{
+			int x = work[--size];
+			active[x] = false;
+			
+			for ( int p = offsets[x]; p < offsets[x + 1]; p++)
+			{
+				int s = edgeSlot[p];
+				
+				if ( ! changed[s] || ! similar[p])
+					continue;
+				
+				if ( reverse[p] < 0) {
+					batch.add(adj[p], vertex[x].getId(), Float.floatToRawIntBits(labels[s]));
+					continue;
+				}
+				
+				int t = edgeSlot[reverse[p]];
+				
+				if ( labels[s] < labels[t]) {
+					labels[t] = labels[s];
+					changed[t] = true;
+					
+					int y = localIndex.get(adj[p]);
+					if ( ! active[y]) {
+						active[y] = true;
+						work[size++] = y;
+					}
+				}
+			}
+			
+			for ( int s = slotOffsets[x]; s < slotOffsets[x + 1]; s++)
+				changed[s] = false;
+		}
+		
+		return batch;
+	}
+	
+	
+	/**
+	 * A special neighbor takes the final ID of the neighbor's ego-community holding this vertex
+	 */
+	private void exchangeSpecials() throws IOException
+	{
+		MessageBatch batch = new MessageBatch();
+		
+		for ( int x = 0; x < vertex.length; x++)
+		{
+			for ( int p = offsets[x]; p < offsets[x + 1]; p++)
+			{
+				if ( similar[p])
+					continue;
+				
+				if ( reverse[p] < 0)
+					batch.add(adj[p], vertex[x].getId(), Float.floatToRawIntBits(labels[edgeSlot[p]]));
+				else
+					specialLabel[p] = labels[edgeSlot[reverse[p]]];
+			}
+		}
+		
+		send(batch);
+		
+		batch = MessageBatch.read(in);
+		
+		for ( int m = 0; m < batch.size(); m++) {
+			int p = position(localIndex.get(batch.getTarget(m)), batch.getSource(m));
+			specialLabel[p] = Float.intBitsToFloat(batch.getValue(m));
+		}
+	}
+	
+	
+	/**
+	 * Send the (label, vertex, other member) entries of the owned vertices, the same entries the 
+	 * ParallelCollector makes for a single process.  The other member is only set for the 
+	 * ego-communities of two vertices.  The vertices go in descending ID order so the Coordinator
+	 * can merge the workers in the order the single process collects them.
+	 */
+	private void sendResult() throws IOException
+	{
+		out.writeInt(vertex.length);
+		out.writeInt(numberOfEdges);
+		
+		MessageBatch batch = new MessageBatch();
+		
+		for ( int x = vertex.length - 1; x >= 0; x--)
+		{
+			int id = vertex[x].getId();
+			int slot = slotOffsets[x];
+			
+			for ( EgoCommunity ec : vertex[x].getAllEgoCommunity())
+			{
+				int o = ParallelCollector.NONE;
+				
+				if ( ec.size() == 2) {
+					for ( Integer m : ec.getMembers()) {
+						if ( m != id)
+							o = m;
+					}
+				}
+				
+				batch.add(Float.floatToIntBits(labels[slot++]), id, o);
+			}
+			
+			// the special neighbors join the community of the neighbor's ego-community
+			for ( int p = offsets[x]; p < offsets[x + 1]; p++) {
+				if ( ! similar[p])
+					batch.add(Float.floatToIntBits(specialLabel[p]), id, ParallelCollector.NONE);
+			}
+		}
+		
+		send(batch);
+	}
+	
+	
+	private void send(MessageBatch batch) throws IOException
+	{
+		batch.write(out);
+		out.flush();
+	}
+	
+	
+	/**
+	 * The position of the neighbor in the owned vertex's sorted neighbor list
+	 */
+	private int position(int x, int neighborId)
+	{
+		return Arrays.binarySearch(adj, offsets[x], offsets[x + 1], neighborId);
+	}
+	
+	
+	private static int[] sortedNeighbors(EgoVertex v)
+	{
+		int[] nbr = new int[v.getNeighborCount()];
+		int count = 0;
+		
+		for ( EgoVertex e : v.getNeighbors()) {
+			if ( e.getId() != v.getId())
+				nbr[count++] = e.getId();
+		}
+		
+		nbr = Arrays.copyOf(nbr, count);
+		Arrays.sort(nbr);
+		return nbr;
+	}
+	
+	
+	/**
+	 * The number of common values of two sorted ranges
+	 */
+	private static int commonCount(int[] a, int i, int aEnd, int[] b, int j, int bEnd)
+	{
+		int count = 0;
+		
+		while ( i < aEnd && j < bEnd) {
+			if ( a[i] < b[j])
+				i++;
+			else if ( a[i] > b[j])
+				j++;
+			else {
+				count++; i++; j++;
+			}
+		}
+		
+		return count;
+	}
+}
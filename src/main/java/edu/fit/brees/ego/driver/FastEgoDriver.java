@@ -17,9 +17,32 @@
  */
 package edu.fit.brees.ego.driver;
 
+import edu.fit.brees.ego.community.CommunityCollector;
+import edu.fit.brees.ego.community.CommunityTable;
+import edu.fit.brees.ego.community.CommunityWriter;
 import edu.fit.brees.ego.community.EgoCommunity;
+import edu.fit.brees.ego.community.MembershipIndex;
+import edu.fit.brees.ego.community.NearDuplicateMerger;
+import edu.fit.brees.ego.community.ParallelCollector;
+import edu.fit.brees.ego.distributed.Coordinator;
+import edu.fit.brees.ego.distributed.Worker;
+import edu.fit.brees.ego.engine.AsyncEngine;
+import edu.fit.brees.ego.engine.BspEngine;
+import edu.fit.brees.ego.engine.ComponentPrepass;
+import edu.fit.brees.ego.engine.DetectionEngine;
+import edu.fit.brees.ego.engine.ForkJoinEngine;
+import edu.fit.brees.ego.engine.PartitionEngine;
+import edu.fit.brees.ego.engine.PriorityEngine;
+import edu.fit.brees.ego.engine.ThreadPoolEngine;
+import edu.fit.brees.ego.engine.ThresholdSweep;
+import edu.fit.brees.ego.engine.UnionFindEngine;
+import edu.fit.brees.ego.external.DiskGraph;
+import edu.fit.brees.ego.external.SemiExternalDetector;
+import edu.fit.brees.ego.graph.CompactGraph;
+import edu.fit.brees.ego.graph.EgoIndex;
 import edu.fit.brees.ego.graph.EgoVertex;
 import edu.fit.brees.ego.graph.ProcessingStatus;
+import edu.fit.brees.ego.graph.VertexOrdering;
 import edu.fit.brees.ego.jung.JungNetwork;
 import edu.fit.brees.ego.jung.JungVertex;
 import edu.fit.brees.ego.loader.CommunityReader;
@@ -27,8 +50,11 @@ import edu.fit.brees.ego.loader.DataReader;
 import edu.fit.brees.ego.loader.GmlDataReader;
 import edu.fit.brees.ego.scoring.Score;
 import edu.fit.brees.ego.util.CreateJungNetwork;
+import edu.fit.brees.ego.util.Parallel;
 import edu.fit.brees.ego.util.Visualize;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashSet;
@@ -36,8 +62,9 @@ import java.util.Hashtable;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 
 
@@ -64,12 +91,26 @@ public class FastEgoDriver
 	private boolean displayGraph			= false;		// -d
 	private boolean skipDetection			= false;		// -z
 	private boolean processSpecial			= false;		// -s
+	private String	sweepRange				= null;			// -w
+	private String	engineName				= "pool";		// -e
+	private int		hubDegree				= 1024;			// -c
+	private boolean	triangleExtraction		= false;		// -x
+	private int		workers					= 0;			// -k
+	private String	coordinatorAddress		= null;			// -j
+	private String	workDir					= null;			// -y
+	private int		componentCutoff			= 0;			// -p
+	private String	ordering				= null;			// -r
+	private boolean	columnar				= false;		// -a
+	private float	mergeThreshold			= 0;			// -n
+	private String	outputFile				= null;			// -u
+	private boolean	binaryOutput			= false;		// -b
+	private int		outputShards			= 1;			// -l
 	
 	private int		startIdx				= 1;			// -s		
 	
 	// some info on network
 	private int		numberOfNodes			= 0;
-	private int		numberOfEdges			= 0;
+	private long	numberOfEdges			= 0;
 	
 	private final	ProcessingStatus	status;
 		
@@ -79,6 +120,9 @@ public class FastEgoDriver
 	// all identified
 	private Hashtable<Float, HashSet<Integer>> communities		= null;
 	private Hashtable<Float, HashSet<Integer>> tmpCommunities	= null;;
+	private CommunityTable collected	= null;		// the communities as arrays, from extractCommunities
+	
+	private Coordinator	coordinator		= null;		// only for a distributed run, holds the entries of the workers
 	
 	// timing
 	private long loadStartTime;
@@ -90,6 +134,9 @@ public class FastEgoDriver
 	private long collectStartTime;
 	private long collectEndTime;
 	
+	private long outputStartTime;
+	private long outputEndTime;
+	
 	private long totalStartTime;
 	private long totalEndTime;
 	
@@ -128,6 +175,9 @@ public class FastEgoDriver
 		// parse arguments
 		parseArgs(args);
 		
+		if ( numberOfThreads <= 0)
+			numberOfThreads = Runtime.getRuntime().availableProcessors() * 2;
+		
 		status 			= new ProcessingStatus();
 		vertexHash		= new Hashtable <> ();
 	}
@@ -135,28 +185,64 @@ public class FastEgoDriver
 		
 	public void run() 
 	{
-		//-----------------------------------------------------
-		// Step 1: load the base Graph
-		loadStartTime = System.currentTimeMillis();
-		loadData();
-		loadEndTime = System.currentTimeMillis();
-		
-		if ( skipDetection)
+		if ( coordinatorAddress != null) {
+			runWorker();
 			return;
+		}
 		
-		// Step 2
-		computeStartTime = System.currentTimeMillis();
-		runDetection();
-		computeEndTime = System.currentTimeMillis();
+		if ( workers > 0) {
+			skipVertexOptions("-k");
+			
+			// Step 1 and 2 are done by the workers
+			loadStartTime = loadEndTime = System.currentTimeMillis();
+			
+			computeStartTime = System.currentTimeMillis();
+			runDistributed();
+			computeEndTime = System.currentTimeMillis();
+		}
+		else if ( workDir != null || columnar)
+		{
+			skipVertexOptions(columnar ? "-a" : "-y");
+			runSemiExternal();
+		}
+		else
+		{
+			//-----------------------------------------------------
+			// Step 1: load the base Graph
+			loadStartTime = System.currentTimeMillis();
+			loadData();
+			loadEndTime = System.currentTimeMillis();
+			
+			if ( skipDetection)
+				return;
+			
+			if ( sweepRange != null) {
+				runSweep();
+				return;
+			}
+			
+			// Step 2
+			computeStartTime = System.currentTimeMillis();
+			runDetection();
+			computeEndTime = System.currentTimeMillis();
+		}
 		
 		// Step 3
-		collectStartTime = System.currentTimeMillis();
-		extractCommunities();
-		collectEndTime = System.currentTimeMillis();
+		if ( workDir == null && ! columnar) {
+			collectStartTime = System.currentTimeMillis();
+			extractCommunities();
+			collectEndTime = System.currentTimeMillis();
+		}
 		
 		if ( processSpecial)
 			processSpecialCaseCommunities();
 		
+		if ( outputFile != null) {
+			outputStartTime = System.currentTimeMillis();
+			writeCommunities();
+			outputEndTime = System.currentTimeMillis();
+		}
+		
 		if ( verbose ) {
 			printCommunityStats(communities);
 			
@@ -167,12 +253,61 @@ public class FastEgoDriver
 			System.out.println("Data Load time: " + toSeconds(loadEndTime - loadStartTime) );     ;
 			System.out.println("Detection Time: "+ toSeconds(computeEndTime - computeStartTime) );
 			System.out.println("Group Time: " + toSeconds(collectEndTime - collectStartTime) );
+			
+			if ( outputFile != null)
+				System.out.println("Output Time: " + toSeconds(outputEndTime - outputStartTime) );
 		} else {
 			printCompact();
 		}
 	}
 		
 		
+	/**
+	 * The modes that run without the EgoVertex objects (-k, -y and -a) have their own detection,
+	 * so the options that pick or tune an engine, or that need the vertex objects after the
+	 * detection, are turned off with a message instead of being dropped silently
+	 * 
+	 * @param mode
+	 */
+	private void skipVertexOptions(String mode)
+	{
+		String skipped = "";
+		
+		if ( ! engineName.equals("pool"))
+			skipped += " -e";
+		if ( triangleExtraction)
+			skipped += " -x";
+		if ( componentCutoff > 0)
+			skipped += " -p";
+		if ( ordering != null)
+			skipped += " -r";
+		if ( sweepRange != null)
+			skipped += " -w";
+		if ( skipDetection)
+			skipped += " -z";
+		if ( processSpecial)
+			skipped += " -s";
+		if ( runMetrics)
+			skipped += " -m";
+		if ( displayGraph)
+			skipped += " -d";
+		
+		if ( skipped.isEmpty())
+			return;
+		
+		System.out.println("Not supported with " + mode + ", skipped:" + skipped);
+		
+		triangleExtraction	= false;
+		componentCutoff		= 0;
+		ordering			= null;
+		sweepRange			= null;
+		skipDetection		= false;
+		processSpecial		= false;
+		runMetrics			= false;
+		displayGraph		= false;
+	}
+	
+	
 	/**
 	 * Read in the network data
 	 * 
@@ -207,6 +342,60 @@ public class FastEgoDriver
 	}
 			
 	
+	/**
+	 * Create the engine selected with -e
+	 * 
+	 * @return
+	 */
+	private DetectionEngine createEngine()
+	{
+		DetectionEngine engine = null;
+		
+		switch (engineName) {
+		case "pool":
+			engine = new ThreadPoolEngine(numberOfThreads, status, verbose);
+			break;
+		case "forkjoin":
+			ForkJoinEngine fj = new ForkJoinEngine(numberOfThreads, status, verbose);
+			fj.setHubDegree(hubDegree);
+			engine = fj;
+			break;
+		case "bsp":
+			BspEngine bsp = new BspEngine(numberOfThreads, threshold, status, verbose);
+			bsp.setHubDegree(hubDegree);
+			engine = bsp;
+			break;
+		case "async":
+			AsyncEngine async = new AsyncEngine(numberOfThreads, threshold, status, verbose);
+			async.setHubDegree(hubDegree);
+			engine = async;
+			break;
+		case "unionfind":
+			UnionFindEngine uf = new UnionFindEngine(numberOfThreads, threshold, status, verbose);
+			uf.setHubDegree(hubDegree);
+			engine = uf;
+			break;
+		case "priority":
+			PriorityEngine pe = new PriorityEngine(numberOfThreads, threshold, status, verbose);
+			pe.setHubDegree(hubDegree);
+			engine = pe;
+			break;
+		case "partition":
+			PartitionEngine part = new PartitionEngine(numberOfThreads, threshold, status, verbose);
+			part.setHubDegree(hubDegree);
+			engine = part;
+			break;
+		default:
+			System.out.println("Unknown engine " + engineName + "  exiting");
+			System.exit(-1);
+		}
+		
+		engine.setTriangleExtraction(triangleExtraction);
+		engine.setOrdering(ordering);
+		return engine;
+	}
+	
+	
 	/**
 	 * Run the detection process
 	 * 
@@ -216,7 +405,7 @@ public class FastEgoDriver
 	{
 		iterationCount 	= 0;
 		
-		final  ExecutorService es 	= Executors.newFixedThreadPool(numberOfThreads);
+		DetectionEngine engine = createEngine();
 
 		int numberOfEgoVertex = vertexHash.size();
 	
@@ -227,36 +416,21 @@ public class FastEgoDriver
 		{
 			Collection<EgoVertex> agentList = vertexHash.values();
 			
-			// loop until all EgoVertex are done
-			int extraLoop = 4;
-			while ( extraLoop > 2) 
-			{
-				extraLoop = 0;
-				status.resetDonCount();
-				
-				for (EgoVertex e : agentList )
-					e.setIdChanged(true);
-				
-				while (status.getDoneCount() < numberOfEgoVertex )
-				{
-					++iterationCount;
-					++extraLoop;
-					status.resetDonCount();
-
-					es.invokeAll(agentList);
-						
-					if ( verbose)
-						System.out.println("\tDone Iteration " + iterationCount + "  Extra = " + extraLoop);
-				}
-			}
+			// solve the small components first, the engine only gets the rest
+			if ( componentCutoff > 0)
+				agentList = new ComponentPrepass(numberOfThreads, componentCutoff, verbose).run(agentList);
 			
-			es.shutdown();
+			if ( ! agentList.isEmpty())
+				engine.run(agentList);
+			engine.shutdown();
 		}
 		catch (Exception e)
 		{
 			System.out.println(e.getMessage());
 			System.exit(-1);
 		}
+		
+		iterationCount = engine.getIterationCount();
 
 		if (verbose)
 			System.out.println("DONE");
@@ -265,83 +439,281 @@ public class FastEgoDriver
 
 	
 	
+	/**
+	 * Run the detection on worker processes, the results come back as EgoVertex(es)
+	 */
+	private void runDistributed()
+	{
+		if ( fileName.endsWith(".gml") ) {
+			System.out.println("GML files are not supported with workers  exiting");
+			System.exit(-1);
+		}
+		
+		coordinator = new Coordinator(fileName, workers, threshold, startIdx, 
+				Math.max(1, numberOfThreads / workers), verbose);
+		
+		if ( verbose) 
+			System.out.println("START with " + workers + " workers");
+		
+		try
+		{
+			coordinator.run();
+		}
+		catch (Exception e)
+		{
+			System.out.println(e.getMessage());
+			System.exit(-1);
+		}
+		
+		numberOfNodes	= coordinator.getNumberOfNodes();
+		numberOfEdges	= coordinator.getNumberOfEdges();
+		iterationCount	= coordinator.getIterationCount();
+		
+		if (verbose)
+			System.out.println("DONE");
+	}
+	
+	
+	/**
+	 * Semi-external mode: the graph and the ego-community lists are kept in memory-mapped
+	 * files in the work directory, only the labels are held in memory.
+	 * 
+	 * Columnar mode (no work directory) is the same with the lists held in flat arrays
+	 */
+	private void runSemiExternal()
+	{
+		if ( fileName.endsWith(".gml") ) {
+			System.out.println("GML files are not supported with -y or -a  exiting");
+			System.exit(-1);
+		}
+		
+		try
+		{
+			File dir = ( workDir == null) ? null : new File(workDir);
+			
+			loadStartTime = System.currentTimeMillis();
+			DiskGraph graph = DiskGraph.build(fileName, startIdx, dir);
+			loadEndTime = System.currentTimeMillis();
+			
+			numberOfNodes = graph.getNumberOfVertices();
+			numberOfEdges = graph.getNumberOfEdges();
+			
+			if ( verbose) 
+				System.out.println("START (" + numberOfNodes + ") with " + numberOfThreads + " threads, " + 
+						( dir == null ? "columnar" : "semi-external in " + workDir));
+			
+			computeStartTime = System.currentTimeMillis();
+			SemiExternalDetector detector = new SemiExternalDetector(graph, dir, threshold, numberOfThreads, verbose);
+			detector.run();
+			computeEndTime = System.currentTimeMillis();
+			
+			iterationCount = detector.getIterationCount();
+			
+			collectStartTime = System.currentTimeMillis();
+			ForkJoinPool pool = new ForkJoinPool(numberOfThreads);
+			ParallelCollector collector = new ParallelCollector(pool);
+			detector.collect(collector);
+			useCollector(collector, pool);
+			pool.shutdown();
+			collectEndTime = System.currentTimeMillis();
+			
+			detector.shutdown();
+			graph.close();
+		}
+		catch (IOException e)
+		{
+			System.out.println(e.getMessage());
+			System.exit(-1);
+		}
+		
+		if (verbose)
+			System.out.println("DONE");
+	}
+	
+	
+	/**
+	 * Run as one worker of a distributed run, the address is  host:port  of the coordinator
+	 */
+	private void runWorker()
+	{
+		int split = coordinatorAddress.lastIndexOf(':');
+		
+		Worker worker = new Worker(coordinatorAddress.substring(0, split), 
+				Integer.parseInt(coordinatorAddress.substring(split + 1)), numberOfThreads);
+		
+		try
+		{
+			worker.run();
+		}
+		catch (Exception e)
+		{
+			System.out.println("Worker: " + e);
+			System.exit(-1);
+		}
+	}
+	
+	
 	/**
 	 * Take the labels from each vertex and organize them into communities
 	 */
 	private void extractCommunities()
 	{		
-		// Create a space to collect the Communities
-		communities 	= new Hashtable<>();
-		tmpCommunities	= new Hashtable<>();
+		ForkJoinPool pool = new ForkJoinPool(numberOfThreads);
 		
-		// get the list of all EgoVertex
-		Collection<EgoVertex> agentList = vertexHash.values();
+		// Collect the Communities, in parallel over shards of the vertex list or from the entries of the workers
+		ParallelCollector collector = new ParallelCollector(pool);
 		
-		for ( EgoVertex agent : agentList)
-		{
-			int vertexID = agent.getId();		
+		if ( coordinator != null)
+			coordinator.collect(collector);
+		else
+			collector.collect(vertexHash.values());
+		
+		useCollector(collector, pool);
+		pool.shutdown();
+	}
+	
+	
+	/**
+	 * Take the communities from the collector, and merge the ones that are nearly the same
+	 */
+	private void useCollector(ParallelCollector collector, ForkJoinPool pool)
+	{
+		collected = collector.getCommunities();
+		
+		// merge the communities that are nearly the same
+		if ( mergeThreshold > 0) {
+			NearDuplicateMerger merger = new NearDuplicateMerger(pool, mergeThreshold);
+			collected = merger.merge(collected);
 			
-			// Get all the EgoCommunities associated with this EgoVertex
-			Collection<EgoCommunity> ecList = agent.getAllEgoCommunity();
+			if ( verbose)
+				System.out.println("Merged " + merger.getMerged() + " near-duplicate communities");
 			
-			// step through each of the EgoCommunity
-			for ( EgoCommunity ec : ecList)
-			{
-				processEgoCommunity(ec, vertexID);
-			}
+			if ( merger.getTruncated() > 0)
+				System.out.println("Merging compared only part of " + merger.getTruncated() + " large buckets");
+		}
+		
+		// the tables are only built if something other than the count is needed
+		if ( verbose || processSpecial || runOtherSteps) {
+			communities 	= collected.toHashtable();
+			tmpCommunities	= collector.getTmpCommunities().toHashtable();
+		}
+	}
+	
+	
+	/**
+	 * Stream the communities to the output file(s).  After special case processing the 
+	 * communities have changed, and the special communities that are left are written too
+	 */
+	private void writeCommunities()
+	{
+		CommunityTable table;
+		
+		if ( processSpecial)
+			table = CommunityTable.bySize(communities).concat(CommunityTable.bySize(tmpCommunities));
+		else if ( collected != null)
+			table = collected;
+		else
+			table = CommunityTable.bySize(communities);
+		
+		try
+		{
+			List<File> files = new CommunityWriter(binaryOutput, outputShards).write(table, outputFile);
 			
-			/*
-			 * look at the special list 
-			 */
-			ecList = agent.getSpecialGroups();
-
-			for ( EgoCommunity ec : ecList)
-			{
-				processEgoCommunity(ec, vertexID);
-			}
-		}			
+			if ( verbose)
+				System.out.println("Wrote " + table.size() + " communities to " + files.size() + " file(s) " + outputFile);
+		}
+		catch (IOException e)
+		{
+			System.out.println(e.getMessage());
+			System.exit(-1);
+		}
 	}
 	
 	
 	/**
-	 * 
-	 * @param ec
-	 * @param id
+	 * Sweep mode: load and extract the ego-communities once, then classify the special
+	 * vertices and propagate the IDs for each threshold in the range.
+	 * One cover is produced per threshold. 
 	 */
-	private void processEgoCommunity(EgoCommunity ec, int vertexID)
+	private void runSweep()
 	{
-		int size = ec.size();
+		float[] thresholds = ThresholdSweep.parseRange(sweepRange);
 		
-		if ( size > 2 || size == 1) {
-			Float commID = ec.getId();
-
-			// Get the community Set from the master list
-			HashSet<Integer> community = communities.get(commID);
-
-			if (community == null) {
-				// this is the first time seeing this
-				community = new HashSet<Integer>();
-				communities.put(commID, community);
-			}
-
-			community.add(vertexID);
+		if ( mergeThreshold > 0 || outputFile != null) {
+			System.out.println("Merging and output (-n, -u) are not supported with -w, skipped");
+			mergeThreshold	= 0;
+			outputFile		= null;
 		}
-		else  // the size is 2 or less
+		
+		DetectionEngine engine = createEngine();
+		ForkJoinPool pool = new ForkJoinPool(numberOfThreads);
+		
+		try
 		{
-			Float commID = ec.getId();
-
-			// Get the community Set from the master list
-			HashSet<Integer> community = communities.get(commID);
-
-			if (community == null) {
-				// this is the first time seeing this
-				community = new HashSet<Integer>();
-				tmpCommunities.put(commID, community);
+			// Step 2a: only extract the ego-communities
+			computeStartTime = System.currentTimeMillis();
+			
+			engine.findEgoCommunities(vertexHash.values());
+			engine.shutdown();
+			
+			// Step 2b: the per-edge overlap does not depend on the threshold
+			final EgoIndex index = EgoIndex.build(CompactGraph.build(vertexHash.values(), ordering), vertexHash.values());
+			int n = index.getNumberOfVertices();
+			
+			Parallel.forRange(pool, n, Parallel.grain(pool, n), new Parallel.Range() {
+				public void run(int from, int to) {
+					index.computeOverlap(from, to);
+				}
+			});
+			
+			long extractTime = System.currentTimeMillis() - computeStartTime;
+			
+			if ( verbose)
+				System.out.println("Extraction Time: " + toSeconds(extractTime));
+			
+			// Step 3: run the thresholds a thread-count at a time, so that only that many
+			// label arrays are held at once
+			ThresholdSweep sweep = new ThresholdSweep(index);
+			List<Callable<ThresholdSweep.Result>> sweepTasks = sweep.tasks(thresholds);
+			
+			for ( int x = 0; x < sweepTasks.size(); x += numberOfThreads)
+			{
+				List<Future<ThresholdSweep.Result>> results = 
+						pool.invokeAll(sweepTasks.subList(x, Math.min(sweepTasks.size(), x + numberOfThreads)));
+				
+				for ( Future<ThresholdSweep.Result> f : results)
+				{
+					ThresholdSweep.Result r = f.get();
+					
+					collectStartTime = System.currentTimeMillis();
+					CommunityCollector collector = sweep.collect(r);
+					collectEndTime = System.currentTimeMillis();
+					
+					threshold		= r.threshold;
+					iterationCount	= r.iterationCount;
+					communities		= collector.getCommunities();
+					tmpCommunities	= collector.getTmpCommunities();
+					
+					if ( verbose ) {
+						System.out.println();
+						System.out.println("Threshold: " + threshold);
+						printCommunityStats(communities);
+						System.out.println("Propagation Time: "+ toSeconds(r.time) );
+						System.out.println("Group Time: " + toSeconds(collectEndTime - collectStartTime) );
+					} else {
+						// detection time is the shared extraction plus this threshold
+						computeEndTime = computeStartTime + extractTime + r.time;
+						printCompact();
+					}
+				}
 			}
 			
-			Set<Integer> members = ec.getMembers();
-			for ( Integer x : members)
-				community.add(x);
+			pool.shutdown();
+		}
+		catch (Exception e)
+		{
+			System.out.println(e.getMessage());
+			System.exit(-1);
 		}
 	}
 	
@@ -354,7 +726,13 @@ public class FastEgoDriver
 	{
 		List<Float> toDelete	= new ArrayList<>();
 		
-		Collection<HashSet<Integer>> comm = communities.values();
+		// the communities of each vertex, so membership is a lookup and not a scan of every community
+		int[] vertexIds = new int[vertexHash.size()];
+		int n = 0;
+		for ( Integer id : vertexHash.keySet())
+			vertexIds[n++] = id;
+		
+		MembershipIndex index = new MembershipIndex(collected, vertexIds);
 		
 		//-- list of special communities --
 		Set<Float> keys = tmpCommunities.keySet();
@@ -372,22 +750,8 @@ public class FastEgoDriver
 			// if both are already in other communities, then delete them
 			if ( tmp.size() == 2) 
 			{
-				boolean aFound = false;
-				boolean bFound = false;
-				
-				for ( HashSet<Integer> ego : comm ) {
-					if ( ego.contains(data[0]) ) {
-						aFound = true;
-						break;
-					}
-				}
-			
-				for ( HashSet<Integer> ego : comm ) {
-					if ( ego.contains(data[1]) ) {
-						bFound = true;
-						break;
-					}
-				}
+				boolean aFound = index.isMember(data[0]);
+				boolean bFound = index.isMember(data[1]);
 			
 				if ( aFound && bFound ) {
 					toDelete.add(idx);
@@ -395,10 +759,10 @@ public class FastEgoDriver
 				{
 					if ( aFound && ! bFound)
 					{
-						if ( checkSpecial(data[0], data[1]) )
+						if ( checkSpecial(data[0], data[1], index) )
 							toDelete.add(idx);	
 					} else {
-						if ( checkSpecial(data[1], data[0]) )
+						if ( checkSpecial(data[1], data[0], index) )
 							toDelete.add(idx);						
 					}
 				}
@@ -411,7 +775,7 @@ public class FastEgoDriver
 	}
 	
 	
-	private boolean checkSpecial(Integer a, Integer b)
+	private boolean checkSpecial(Integer a, Integer b, MembershipIndex index)
 	{
 		// Add B to community A
 		EgoVertex va = this.vertexHash.get(a);
@@ -419,10 +783,15 @@ public class FastEgoDriver
 		ArrayList<EgoCommunity> c = (ArrayList<EgoCommunity>)va.getAllEgoCommunity();
 		
 		if ( c.size() == 1) {
-			EgoCommunity ec = c.get(a);
+			EgoCommunity ec = c.get(0);
 			
 			HashSet<Integer> cluster = communities.get(ec.getId());
+			
+			if ( cluster == null)		// a pair that is only a temporary community
+				return false;
+			
 			cluster.add(b);
+			index.join(b);
 			return true;
 		}
 		return false;
@@ -574,7 +943,7 @@ public class FastEgoDriver
 		System.out.print("\t" + toSeconds(collectEndTime - collectStartTime) );		// "Group Time: " + 
 		System.out.print("\t" + numberOfThreads);
 		System.out.print("\t" + threshold);
-		System.out.print("\t" + communities.size() );
+		System.out.print("\t" + ( communities != null ? communities.size() : collected.size()) );
 		System.out.print("\t" + iterationCount);
 		System.out.print("\t" + numberOfNodes);
 		System.out.print("\t" + numberOfEdges);
@@ -603,33 +972,79 @@ public class FastEgoDriver
 			
 			switch (arg) {
 			
+			case "-a":
+				columnar = true;
+				break;
+			case "-b":
+				binaryOutput = true;
+				break;
+			case "-c":
+				hubDegree = Integer.valueOf(args[i++]);
+				break;
 			case "-d":
 				displayGraph = true;
 				runOtherSteps = true;
 				break;
+			case "-j":
+				coordinatorAddress = args[i++];
+				break;
+			case "-k":
+				workers = Integer.valueOf(args[i++]);
+				break;
 			case "-g":
 				compareGroups = true;
 				runOtherSteps = true;
 				break;
+			case "-e":
+				engineName = args[i++];
+				break;
 			case "-f":
 				fileName =  args[i++];
 				break;
+			case "-l":
+				outputShards = Integer.valueOf(args[i++]);
+				break;
 			case "-m":
 				runMetrics = true;
 				runOtherSteps = true;
 				break;
+			case "-n":
+				mergeThreshold = Float.valueOf(args[i++]);
+				break;
 			case "-o":
 				threshold = Float.valueOf(args[i++]);
 				break;
+			case "-p":
+				componentCutoff = Integer.valueOf(args[i++]);
+				break;
+			case "-r":
+				ordering = args[i++];
+				if ( ! VertexOrdering.isKnown(ordering)) {
+					System.out.println("Unknown vertex ordering " + ordering + "  exiting");
+					System.exit(-1);
+				}
+				break;
 			case "-s":
 				processSpecial = true;
 				break;
 			case "-t":
 				numberOfThreads = Integer.valueOf(args[i++]);
 				break;
+			case "-u":
+				outputFile = args[i++];
+				break;
 			case "-v":
 				verbose = true;
 				break;
+			case "-w":
+				sweepRange = args[i++];
+				break;
+			case "-x":
+				triangleExtraction = true;
+				break;
+			case "-y":
+				workDir = args[i++];
+				break;
 			case "-z":
 				skipDetection = true;
 				break;
@@ -658,6 +1073,22 @@ public class FastEgoDriver
 		System.out.println("-z          \tSkip Detection (using if doing -d or -m)");
 		System.out.println("-g          \tScore Results");
 		System.out.println("-s          \tProcess special vertices");	
+		System.out.println("-e <name>  \tEngine: pool (default), forkjoin, bsp, async, unionfind, priority,");
+		System.out.println("           \t        partition");
+		System.out.println("-c <int>   \tHub degree cutoff, hubs are split into subtasks (forkjoin)");
+		System.out.println("-x          \tFind all ego-communities at once by listing triangles");
+		System.out.println("-w <f:t:s>  \tSweep the Overlap Threshold from:to:step (e.g. 0.5:0.95:0.05)");
+		System.out.println("-p <int>   \tSolve connected components smaller than this before running the engine");
+		System.out.println("-u <path>  \tWrite the communities to this file, one per line");
+		System.out.println("-b          \tWrite the file in binary (varint, delta coded members)");
+		System.out.println("-l <int>   \tWrite this many shard files (path.0, path.1, ...) in parallel");
+		System.out.println("-n <float> \tMerge communities with a Jaccard index of at least this (MinHash/LSH)");
+		System.out.println("-r <name>  \tLay out the vertices for cache locality: degree, bfs, rcm");
+		System.out.println("-y <dir>   \tSemi-external: keep the graph in memory-mapped files in this directory");
+		System.out.println("-a          \tColumnar: run the -y detector with its lists on the heap, no vertex objects");
+		System.out.println("           \t(-e -x -p -r -w -z -s -m -d are skipped with -y, -a and -k)");
+		System.out.println("-k <int>   \tRun on this many worker processes on localhost");
+		System.out.println("-j <h:p>   \tRun as a worker of the coordinator at host:port (started by -k)");
 
 	}
 
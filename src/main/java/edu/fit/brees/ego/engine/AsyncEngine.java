@@ -0,0 +1,194 @@
+/*
+ * 
+ * Copyright 2014 Bradley S. Rees
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License. 
+ *  
+ */
+package edu.fit.brees.ego.engine;
+
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReference;
+
+import edu.fit.brees.ego.graph.EgoIndex;
+import edu.fit.brees.ego.graph.ProcessingStatus;
+import edu.fit.brees.ego.util.Parallel;
+
+
+/**
+ * Propagates the ego-community IDs asynchronously, without supersteps or locks.
+ * 
+ * The labels are kept as float bits in an AtomicIntegerArray and only ever lowered with a 
+ * compare-and-set loop, so the smallest label always wins no matter how the updates interleave.  
+ * A vertex is queued again only when one of its labels was actually lowered, and it is queued 
+ * at most once at a time.  A running vertex reads the newest labels of its neighbors, so 
+ * a small label can cross many edges in the time a superstep would move it one.
+ * 
+ * The forked vertex tasks are never joined, the run ends when the pool is quiescent.  The first
+ * failure of a vertex task is kept and thrown from propagate, so a failed run does not return
+ * labels that were only partly propagated.
+ * 
+ * There are no rounds, so the iteration count is 1 (as for the UnionFindEngine), and the 
+ * number of vertex activations is printed with verbose.
+ * 
+ * @author bradrees
+ *
+ */
+public class AsyncEngine extends LabelEngine
+{
+	private boolean[]			similar		= null;
+	private AtomicIntegerArray	labels		= null;			// float bits of each slot label
+	private AtomicIntegerArray	queued		= null;			// 1 if the vertex is waiting to run
+	private AtomicInteger		activations	= new AtomicInteger();
+	private final AtomicReference<Throwable>	failure	= new AtomicReference<>();
+	
+	
+	public AsyncEngine(int numberOfThreads, float threshold, ProcessingStatus status, boolean verbose)
+	{
+		super(numberOfThreads, threshold, status, verbose);
+	}
+	
+	
+	protected float[] propagate(final EgoIndex index)
+	{
+		final int n 		= index.getNumberOfVertices();
+		final int[] offsets	= index.getOffsets();
+		
+		float[] initial = index.getSlotLabel();
+		
+		similar = new boolean[index.getAdj().length];
+		labels	= new AtomicIntegerArray(initial.length);
+		queued	= new AtomicIntegerArray(n);
+		
+		for ( int s = 0; s < initial.length; s++)
+			labels.set(s, Float.floatToRawIntBits(initial[s]));
+		
+		activations.set(0);
+		failure.set(null);
+		
+		Parallel.forRange(pool, n, Parallel.grain(pool, n), new Parallel.Range() {
+			public void run(int from, int to) {
+				for ( int p = offsets[from]; p < offsets[to]; p++)
+					similar[p] = index.isSimilar(p, threshold);
+			}
+		});
+		
+		// every vertex starts out queued, the first sweep runs them all
+		for ( int u = 0; u < n; u++)
+			queued.set(u, 1);
+		
+		Parallel.forRange(pool, n, Parallel.grain(pool, n), new Parallel.Range() {
+			public void run(int from, int to) {
+				for ( int u = from; u < to; u++)
+					runVertex(u);
+			}
+		});
+		
+		// wait for the vertices that were queued again
+		while ( ! pool.awaitQuiescence(1, TimeUnit.SECONDS))
+			;
+		
+		if ( failure.get() != null)
+			throw new RuntimeException("A vertex task failed: " + failure.get(), failure.get());
+		
+		iterationCount = 1;
+		
+		if ( verbose)
+			System.out.println("\tDone  " + activations.get() + " vertex activations");
+		
+		float[] result = new float[labels.length()];
+		for ( int s = 0; s < result.length; s++)
+			result[s] = Float.intBitsToFloat(labels.get(s));
+		
+		return result;
+	}
+	
+	
+	/**
+	 * Run vertex u if it is still queued, and keep the first failure for propagate
+	 * 
+	 * @param u
+	 */
+	private void runVertex(int u)
+	{
+		// clear first, a label lowered from here on queues the vertex again
+		if ( queued.getAndSet(u, 0) == 0)
+			return;
+		
+		activations.incrementAndGet();
+		
+		try
+		{
+			pushLabels(u);
+		}
+		catch (Throwable t)
+		{
+			failure.compareAndSet(null, t);
+		}
+	}
+	
+	
+	/**
+	 * Push the labels of vertex u to the neighbors' ego-communities that hold u
+	 * 
+	 * @param u
+	 */
+	private void pushLabels(int u)
+	{
+		int[] offsets	= index.getOffsets();
+		int[] adj		= index.getAdj();
+		int[] reverse	= index.getReverse();
+		int[] edgeSlot	= index.getEdgeSlot();
+		
+		for ( int p = offsets[u]; p < offsets[u + 1]; p++)
+		{
+			if ( ! similar[p])
+				continue;
+			
+			float mine = Float.intBitsToFloat(labels.get(edgeSlot[p]));
+			
+			if ( lower(labels, edgeSlot[reverse[p]], mine) ) {
+				int v = adj[p];
+				
+				if ( queued.compareAndSet(v, 0, 1))
+					new VertexTask(v).fork();
+			}
+		}
+	}
+	
+	
+	/**
+	 * Run one queued vertex
+	 */
+	private class VertexTask extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+		
+		private final int	u;
+		
+		
+		VertexTask(int u)
+		{
+			this.u = u;
+		}
+		
+		
+		protected void compute()
+		{
+			runVertex(u);
+		}
+	}
+}
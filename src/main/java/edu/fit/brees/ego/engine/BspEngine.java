@@ -0,0 +1,129 @@
+/*
+ * 
+ * Copyright 2014 Bradley S. Rees
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License. 
+ *  
+ */
+package edu.fit.brees.ego.engine;
+
+import java.util.Arrays;
+
+import edu.fit.brees.ego.graph.EgoIndex;
+import edu.fit.brees.ego.graph.ProcessingStatus;
+import edu.fit.brees.ego.util.Parallel;
+
+
+/**
+ * Propagates the ego-community IDs in bulk-synchronous supersteps (Pregel style).
+ * 
+ * The labels are double buffered: a superstep only reads the labels of the previous superstep 
+ * and each vertex only writes the labels of its own slots, so no locking is needed and the 
+ * result does not depend on the order the vertices are run in.  A vertex is only run if one 
+ * of its neighbors changed in the previous superstep.  The supersteps stop when no label changes.
+ * 
+ * @author bradrees
+ *
+ */
+public class BspEngine extends LabelEngine
+{
+	
+	public BspEngine(int numberOfThreads, float threshold, ProcessingStatus status, boolean verbose)
+	{
+		super(numberOfThreads, threshold, status, verbose);
+	}
+	
+	
+	protected float[] propagate(final EgoIndex index)
+	{
+		final int n = index.getNumberOfVertices();
+		
+		final int[] offsets		= index.getOffsets();
+		final int[] adj			= index.getAdj();
+		final int[] reverse		= index.getReverse();
+		final int[] slotOffsets	= index.getSlotOffsets();
+		final int[] edgeSlot	= index.getEdgeSlot();
+		
+		// the similar test does not change between supersteps
+		final boolean[] similar = new boolean[adj.length];
+		
+		Parallel.forRange(pool, n, Parallel.grain(pool, n), new Parallel.Range() {
+			public void run(int from, int to) {
+				for ( int p = offsets[from]; p < offsets[to]; p++)
+					similar[p] = index.isSimilar(p, threshold);
+			}
+		});
+		
+		float[] cur 	= index.getSlotLabel().clone();
+		float[] next	= cur.clone();
+		
+		// every vertex is new in the first superstep
+		boolean[] changed		= new boolean[n];
+		boolean[] nextChanged	= new boolean[n];
+		Arrays.fill(changed, true);
+		
+		boolean active = true;
+		
+		while ( active )
+		{
+			++iterationCount;
+			
+			final float[] 	in			= cur;
+			final float[] 	out			= next;
+			final boolean[]	inChanged	= changed;
+			final boolean[]	outChanged	= nextChanged;
+			
+			Parallel.forRange(pool, n, Parallel.grain(pool, n), new Parallel.Range() {
+				public void run(int from, int to) {
+					for ( int u = from; u < to; u++)
+					{
+						for ( int s = slotOffsets[u]; s < slotOffsets[u + 1]; s++)
+							out[s] = in[s];
+						
+						boolean mine = false;
+						
+						for ( int p = offsets[u]; p < offsets[u + 1]; p++)
+						{
+							// pull from the neighbor's ego-community that holds u
+							if ( inChanged[adj[p]] && similar[p]) {
+								int t = edgeSlot[p];
+								float theirs = in[edgeSlot[reverse[p]]];
+								
+								if ( theirs < out[t]) {
+									out[t] = theirs;
+									mine = true;
+								}
+							}
+						}
+						
+						outChanged[u] = mine;
+					}
+				}
+			});
+			
+			active = false;
+			for ( int u = 0; u < n && ! active; u++)
+				active = nextChanged[u];
+			
+			if ( verbose)
+				System.out.println("\tDone Superstep " + iterationCount);
+			
+			cur		= out;
+			next	= in;
+			changed		= outChanged;
+			nextChanged	= inChanged;
+		}
+		
+		return cur;
+	}
+}
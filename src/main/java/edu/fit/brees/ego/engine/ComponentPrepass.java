@@ -0,0 +1,198 @@
+/*
+ * 
+ * Copyright 2014 Bradley S. Rees
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License. 
+ *  
+ */
+package edu.fit.brees.ego.engine;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import edu.fit.brees.ego.graph.CompactGraph;
+import edu.fit.brees.ego.graph.EgoVertex;
+import edu.fit.brees.ego.graph.ProcessingStatus;
+import edu.fit.brees.ego.util.ConcurrentUnionFind;
+import edu.fit.brees.ego.util.Parallel;
+
+
+/**
+ * Find the connected components before detection and solve the small ones right away.
+ * 
+ * An ego-net never crosses a component, so each component can be solved on its own.  
+ * A component smaller than the cutoff is run start to finish by one thread, with its own 
+ * ProcessingStatus, so it never shows up in the iterations of the engine.  The small components 
+ * are spread over the threads.  The vertices of the larger components are returned for the 
+ * engine to run.
+ * 
+ * @author bradrees
+ *
+ */
+public class ComponentPrepass
+{
+	private final int		numberOfThreads;
+	private final int		cutoff;
+	private final boolean	verbose;
+	
+	private int		numberOfComponents	= 0;
+	private int		smallComponents		= 0;
+	
+	
+	/**
+	 * 
+	 * @param numberOfThreads
+	 * @param cutoff	- components with fewer vertices than this are solved inline
+	 * @param verbose
+	 */
+	public ComponentPrepass(int numberOfThreads, int cutoff, boolean verbose)
+	{
+		this.numberOfThreads	= numberOfThreads;
+		this.cutoff				= cutoff;
+		this.verbose			= verbose;
+	}
+	
+	
+	/**
+	 * Solve the small components
+	 * 
+	 * @param agentList
+	 * @return the vertices of the components that are left for the engine
+	 */
+	public List<EgoVertex> run(Collection<EgoVertex> agentList)
+	{
+		ForkJoinPool pool = new ForkJoinPool(numberOfThreads);
+		
+		final CompactGraph graph = CompactGraph.build(agentList);
+		final int n 			= graph.getNumberOfVertices();
+		final int[] offsets		= graph.getOffsets();
+		final int[] adj			= graph.getAdj();
+		
+		final ConcurrentUnionFind uf = new ConcurrentUnionFind(n);
+		
+		Parallel.forRange(pool, n, Parallel.grain(pool, n), new Parallel.Range() {
+			public void run(int from, int to) {
+				for ( int u = from; u < to; u++) {
+					for ( int p = offsets[u]; p < offsets[u + 1]; p++) {
+						if ( adj[p] > u)
+							uf.union(u, adj[p]);
+					}
+				}
+			}
+		});
+		
+		EgoVertex[] byIndex = new EgoVertex[n];
+		for ( EgoVertex v : agentList)
+			byIndex[graph.indexOf(v.getId())] = v;
+		
+		// group the vertices by component, the root is the smallest index of the component
+		int[] root = new int[n];
+		int[] size = new int[n];
+		
+		for ( int u = 0; u < n; u++) {
+			root[u] = uf.find(u);
+			size[root[u]]++;
+		}
+		
+		int[] start = new int[n + 1];
+		for ( int u = 0; u < n; u++) {
+			start[u + 1] = start[u] + size[u];
+			
+			if ( size[u] > 0)
+				numberOfComponents++;
+		}
+		
+		final int[] member = new int[n];
+		int[] fill = new int[n];
+		for ( int u = 0; u < n; u++)
+			member[start[root[u]] + fill[root[u]]++] = u;
+		
+		final List<EgoVertex[]> small = new ArrayList<>();
+		List<EgoVertex> rest = new ArrayList<>();
+		
+		for ( int r = 0; r < n; r++)
+		{
+			if ( size[r] == 0)
+				continue;
+			
+			if ( size[r] < cutoff) {
+				EgoVertex[] comp = new EgoVertex[size[r]];
+				for ( int x = 0; x < size[r]; x++)
+					comp[x] = byIndex[member[start[r] + x]];
+				small.add(comp);
+			} else {
+				for ( int x = 0; x < size[r]; x++)
+					rest.add(byIndex[member[start[r] + x]]);
+			}
+		}
+		
+		smallComponents = small.size();
+		
+		Parallel.forRange(pool, small.size(), Parallel.grain(pool, small.size()), new Parallel.Range() {
+			public void run(int from, int to) {
+				for ( int c = from; c < to; c++)
+					solve(small.get(c));
+			}
+		});
+		
+		pool.shutdown();
+		
+		if ( verbose)
+			System.out.println("\tComponents " + numberOfComponents + "  solved inline " + smallComponents 
+					+ "  vertices left " + rest.size());
+		
+		return rest;
+	}
+	
+	
+	/**
+	 * Run all three phases on one component, on this thread
+	 * 
+	 * @param comp
+	 */
+	private void solve(EgoVertex[] comp)
+	{
+		ProcessingStatus local = new ProcessingStatus();
+		
+		for ( EgoVertex v : comp) {
+			v.setProcessingStatus(local);
+			v.buildEgoCommunities();
+		}
+		
+		for ( EgoVertex v : comp)
+			v.determineSpecialNodes();
+		
+		// after phase 1 every ego-community is new
+		List<EgoVertex> frontier = Arrays.asList(comp);
+		
+		while ( ! frontier.isEmpty() )
+		{
+			for ( EgoVertex v : frontier)
+				v.execute();
+			
+			frontier = local.drainChanged();
+		}
+	}
+	
+	
+	public int getNumberOfComponents() {
+		return numberOfComponents;
+	}
+	
+	public int getSmallComponents() {
+		return smallComponents;
+	}
+}
@@ -0,0 +1,224 @@
+/*
+ * 
+ * Copyright 2014 Bradley S. Rees
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License. 
+ *  
+ */
+package edu.fit.brees.ego.engine;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import edu.fit.brees.ego.graph.CompactGraph;
+import edu.fit.brees.ego.graph.EgoVertex;
+import edu.fit.brees.ego.graph.ProcessingStatus;
+import edu.fit.brees.ego.util.TriangleExtractor;
+
+
+/**
+ * Base class of the engines that run the phases of the algorithm over the EgoVertex(es).
+ * 
+ * Each phase is a complete pass with a barrier at the end, so no EgoVertex has to wait
+ * on a neighbor:
+ * 
+ *   Phase 1 - extract		find the ego-communities of every vertex
+ *   Phase 2 - findSpecial	find the special vertices
+ *   Phase 3 - propagate	push the changed IDs until nothing changes
+ * 
+ * @author bradrees
+ *
+ */
+public abstract class DetectionEngine
+{
+	protected final int					numberOfThreads;
+	protected final ProcessingStatus	status;
+	protected final boolean				verbose;
+	
+	protected int	iterationCount	= 0;
+	
+	// find all the ego-communities at once by listing the triangles
+	private boolean	triangleExtraction	= false;
+	
+	// the compact form of the graph, if one was built
+	protected CompactGraph	graph	= null;
+	
+	// the VertexOrdering used to lay out the vertices, null to keep the ID order
+	protected String	ordering	= null;
+	
+	
+	protected DetectionEngine(int numberOfThreads, ProcessingStatus status, boolean verbose)
+	{
+		this.numberOfThreads	= numberOfThreads;
+		this.status				= status;
+		this.verbose			= verbose;
+	}
+	
+	
+	/**
+	 * Run all three phases
+	 * 
+	 * @param agentList
+	 * @throws Exception
+	 */
+	public void run(Collection<EgoVertex> agentList) throws Exception
+	{
+		agentList = reorder(agentList);
+		
+		findEgoCommunities(agentList);
+		findSpecial(agentList);
+		propagate(agentList);
+	}
+	
+	
+	/**
+	 * Phase 1 - find the ego-communities of every vertex, either one vertex at a time (extract) 
+	 * or by listing the triangles of the whole graph
+	 * 
+	 * @param agentList
+	 * @throws Exception
+	 */
+	public void findEgoCommunities(Collection<EgoVertex> agentList) throws Exception
+	{
+		if ( triangleExtraction ) {
+			ForkJoinPool pool = new ForkJoinPool(numberOfThreads);
+			
+			if ( graph == null )
+				graph = CompactGraph.build(agentList, ordering);
+			
+			TriangleExtractor extractor = new TriangleExtractor(graph);
+			extractor.extractAll(agentList, pool);
+			
+			pool.shutdown();
+		} else {
+			extract(agentList);
+		}
+	}
+	
+	
+	/**
+	 * Put the vertices in the order of the VertexOrdering, so the tasks that run one after 
+	 * the other work on vertices that are close in the graph
+	 * 
+	 * @param agentList
+	 * @return
+	 */
+	protected Collection<EgoVertex> reorder(Collection<EgoVertex> agentList)
+	{
+		if ( ordering == null )
+			return agentList;
+		
+		graph = CompactGraph.build(agentList, ordering);
+		
+		EgoVertex[] byIndex = new EgoVertex[agentList.size()];
+		for ( EgoVertex v : agentList)
+			byIndex[graph.indexOf(v.getId())] = v;
+		
+		return Arrays.asList(byIndex);
+	}
+	
+	
+	/**
+	 * Find the ego-communities one EgoVertex at a time
+	 * 
+	 * @param agentList
+	 * @throws Exception
+	 */
+	public abstract void extract(Collection<EgoVertex> agentList) throws Exception;
+	
+	
+	/**
+	 * Phase 2 - find the special vertices
+	 * 
+	 * @param agentList
+	 * @throws Exception
+	 */
+	public abstract void findSpecial(Collection<EgoVertex> agentList) throws Exception;
+	
+	
+	/**
+	 * Run pushIdChange on each of the vertices
+	 * 
+	 * @param vertices
+	 * @throws Exception
+	 */
+	protected abstract void push(Collection<EgoVertex> vertices) throws Exception;
+	
+	
+	public abstract void shutdown();
+	
+	
+	/**
+	 * Phase 3 - propagate the IDs until nothing changes.
+	 * 
+	 * Only the vertices that had an ID change in the previous iteration are run.
+	 * Once no vertex is left, one more iteration is run with every ego-community marked 
+	 * as changed to confirm that the IDs are stable.
+	 * 
+	 * @param agentList
+	 * @throws Exception
+	 */
+	public void propagate(Collection<EgoVertex> agentList) throws Exception
+	{
+		// after phase 1 every ego-community is new
+		List<EgoVertex> frontier = new ArrayList<>(agentList);
+		status.drainChanged();
+		
+		boolean confirmed = false;
+		
+		while ( ! confirmed )
+		{
+			while ( ! frontier.isEmpty() )
+			{
+				++iterationCount;
+				
+				push(frontier);
+				frontier = status.drainChanged();
+				
+				if ( verbose)
+					System.out.println("\tDone Iteration " + iterationCount + "  Next = " + frontier.size());
+			}
+			
+			// confirm
+			for (EgoVertex e : agentList )
+				e.setIdChanged(true);
+			
+			++iterationCount;
+			push(agentList);
+			frontier = status.drainChanged();
+			
+			confirmed = frontier.isEmpty();
+		}
+	}
+	
+	
+	public int getIterationCount()
+	{
+		return iterationCount;
+	}
+	
+	
+	public void setTriangleExtraction(boolean triangleExtraction)
+	{
+		this.triangleExtraction = triangleExtraction;
+	}
+	
+	
+	public void setOrdering(String ordering)
+	{
+		this.ordering = ordering;
+	}
+}
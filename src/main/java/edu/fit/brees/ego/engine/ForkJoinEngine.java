@@ -0,0 +1,287 @@
+/*
+ * 
+ * Copyright 2014 Bradley S. Rees
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License. 
+ *  
+ */
+package edu.fit.brees.ego.engine;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import edu.fit.brees.ego.community.EgoCommunity;
+import edu.fit.brees.ego.graph.EgoVertex;
+import edu.fit.brees.ego.graph.ProcessingStatus;
+import edu.fit.brees.ego.util.ExtractEgoCommunities;
+
+
+/**
+ * Runs the phases of the algorithm on a work-stealing ForkJoinPool.
+ * 
+ * The vertices are not one task each.  A pass is a range task that is split on the estimated 
+ * work of the range (based on degree), so many low degree vertices are run as one task.
+ * A high degree vertex (a hub) is split itself:  the half-hop search of its ego-net, the 
+ * check of its neighbors for special vertices and the push of its IDs to its neighbors are all 
+ * run as subtasks, so one hub does not hold up the pass while the other threads are idle.
+ * 
+ * @author bradrees
+ *
+ */
+public class ForkJoinEngine extends DetectionEngine
+{
+	// the passes
+	private static final int EXTRACT	= 0;
+	private static final int SPECIAL	= 1;
+	private static final int PUSH		= 2;
+	
+	protected final ForkJoinPool	pool;
+	
+	private int		grainSize	= 4096;		// estimated work of one task
+	private int		hubDegree	= 1024;		// a vertex with more neighbors is split
+	private int		hubChunk	= 256;		// neighbors handled by one hub subtask
+	
+	
+	public ForkJoinEngine(int numberOfThreads, ProcessingStatus status, boolean verbose)
+	{
+		super(numberOfThreads, status, verbose);
+		this.pool = new ForkJoinPool(numberOfThreads);
+	}
+	
+	
+	public void extract(Collection<EgoVertex> agentList) throws Exception
+	{
+		runPass(agentList, EXTRACT);
+	}
+	
+	
+	public void findSpecial(Collection<EgoVertex> agentList) throws Exception
+	{
+		runPass(agentList, SPECIAL);
+	}
+	
+	
+	protected void push(Collection<EgoVertex> vertices) throws Exception
+	{
+		runPass(vertices, PUSH);
+	}
+	
+	
+	public void shutdown()
+	{
+		pool.shutdown();
+	}
+	
+	
+	/**
+	 * A vertex with more neighbors than this is a hub.  The ego-net of a hub is found by 
+	 * subtasks sharing a concurrent union-find, which bounds the longest single task.
+	 * 
+	 * @param hubDegree
+	 */
+	public void setHubDegree(int hubDegree)
+	{
+		this.hubDegree = hubDegree;
+	}
+	
+	
+	/**
+	 * Run one pass over the vertices
+	 * 
+	 * @param agentList
+	 * @param pass
+	 */
+	private void runPass(Collection<EgoVertex> agentList, int pass)
+	{
+		EgoVertex[] vertices = agentList.toArray(new EgoVertex[agentList.size()]);
+		
+		// prefix sum of the estimated work
+		long[] work = new long[vertices.length + 1];
+		
+		for ( int x = 0; x < vertices.length; x++)
+			work[x + 1] = work[x] + estimate(vertices[x], pass);
+		
+		pool.invoke(new RangeTask(vertices, work, 0, vertices.length, pass));
+	}
+	
+	
+	/**
+	 * The estimated work of a vertex.  Finding the ego-net scans the neighbors of every 
+	 * neighbor, the other passes are linear in the degree.
+	 * 
+	 * @param v
+	 * @param pass
+	 * @return
+	 */
+	private long estimate(EgoVertex v, int pass)
+	{
+		long work = v.getNeighborCount() + 1;
+		
+		if ( pass == EXTRACT) {
+			for ( EgoVertex friend : v.getNeighbors())
+				work += friend.getNeighborCount();
+		}
+		
+		return work;
+	}
+	
+	
+	/**
+	 * Run the pass on a single vertex
+	 * 
+	 * @param v
+	 * @param pass
+	 */
+	private void runVertex(EgoVertex v, int pass)
+	{
+		boolean hub = v.getNeighborCount() > hubDegree;
+		
+		switch (pass)
+		{
+		case EXTRACT:
+			if ( hub )
+				v.setEgoCommunities( ExtractEgoCommunities.extractSplit(v, grainSize) );
+			else
+				v.buildEgoCommunities();
+			break;
+			
+		case SPECIAL:
+			if ( hub ) {
+				// the neighbors with a larger ID are checked by this vertex
+				List<Integer> ids = new ArrayList<>();
+				for ( EgoVertex friend : v.getNeighbors()) {
+					if ( friend.getId() > v.getId())
+						ids.add(friend.getId());
+				}
+				
+				new HubTask(v, ids.toArray(new Integer[ids.size()]), 0, ids.size(), 0f, SPECIAL).invoke();
+				v.setSpecialCompleted();
+			} else {
+				v.determineSpecialNodes();
+			}
+			break;
+			
+		case PUSH:
+			if ( hub ) {
+				if ( v.hasAnyEgoChanged() ) {
+					List<HubTask> tasks = new ArrayList<>();
+					
+					for ( EgoCommunity ec : v.takeChangedEgoCommunities()) {
+						Integer[] members = ec.getMembers().toArray(new Integer[ec.size()]);
+						tasks.add( new HubTask(v, members, 0, members.length, ec.getId(), PUSH));
+					}
+					
+					RecursiveAction.invokeAll(tasks);
+				}
+			} else {
+				v.execute();
+			}
+			break;
+		}
+	}
+	
+	
+	/**
+	 * A range of vertices, split on the estimated work
+	 */
+	@SuppressWarnings("serial")
+	private class RangeTask extends RecursiveAction
+	{
+		private final EgoVertex[]	vertices;
+		private final long[]		work;
+		private final int			from;
+		private final int			to;
+		private final int			pass;
+		
+		RangeTask(EgoVertex[] vertices, long[] work, int from, int to, int pass)
+		{
+			this.vertices	= vertices;
+			this.work		= work;
+			this.from		= from;
+			this.to			= to;
+			this.pass		= pass;
+		}
+		
+		protected void compute()
+		{
+			if ( to - from > 1 && work[to] - work[from] > grainSize)
+			{
+				// split where half of the work is on each side
+				long half = (work[from] + work[to]) / 2;
+				int lo = from + 1;
+				int hi = to - 1;
+				
+				while ( lo < hi) {
+					int mid = (lo + hi) >>> 1;
+					if ( work[mid] < half)
+						lo = mid + 1;
+					else
+						hi = mid;
+				}
+				
+				invokeAll(new RangeTask(vertices, work, from, lo, pass), 
+						  new RangeTask(vertices, work, lo, to, pass));
+				return;
+			}
+			
+			for ( int x = from; x < to; x++)
+				runVertex(vertices[x], pass);
+		}
+	}
+	
+	
+	/**
+	 * A range of the neighbors of a hub
+	 */
+	@SuppressWarnings("serial")
+	private class HubTask extends RecursiveAction
+	{
+		private final EgoVertex	hub;
+		private final Integer[]	ids;
+		private final int		from;
+		private final int		to;
+		private final float		label;
+		private final int		pass;
+		
+		HubTask(EgoVertex hub, Integer[] ids, int from, int to, float label, int pass)
+		{
+			this.hub	= hub;
+			this.ids	= ids;
+			this.from	= from;
+			this.to		= to;
+			this.label	= label;
+			this.pass	= pass;
+		}
+		
+		protected void compute()
+		{
+			if ( to - from > hubChunk) {
+				int mid = (from + to) >>> 1;
+				invokeAll(new HubTask(hub, ids, from, mid, label, pass), 
+						  new HubTask(hub, ids, mid, to, label, pass));
+				return;
+			}
+			
+			for ( int x = from; x < to; x++)
+			{
+				if ( pass == SPECIAL)
+					hub.checkSpecial(ids[x]);
+				else if ( ids[x] != hub.getId())	// don't tell ourselves
+					hub.notifyMember(ids[x], label);
+			}
+		}
+	}
+}
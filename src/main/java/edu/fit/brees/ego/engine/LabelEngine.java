@@ -0,0 +1,177 @@
+/*
+ * 
+ * Copyright 2014 Bradley S. Rees
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License. 
+ *  
+ */
+package edu.fit.brees.ego.engine;
+
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import edu.fit.brees.ego.community.EgoCommunity;
+import edu.fit.brees.ego.graph.CompactGraph;
+import edu.fit.brees.ego.graph.EgoIndex;
+import edu.fit.brees.ego.graph.EgoVertex;
+import edu.fit.brees.ego.graph.ProcessingStatus;
+import edu.fit.brees.ego.util.Parallel;
+
+
+/**
+ * Base class of the engines that propagate the ego-community IDs on the flat EgoIndex 
+ * instead of through the EgoVertex objects.
+ * 
+ * The ego-communities are found as in the ForkJoinEngine.  The special vertices are then the  
+ * edges of the index that are not similar at the threshold, and the IDs are propagated as 
+ * labels in a primitive array indexed by ego-community slot.  When done, the labels and the 
+ * special vertices are written back to each EgoVertex, so the communities are collected 
+ * in the same way as for the other engines.
+ * 
+ * @author bradrees
+ *
+ */
+public abstract class LabelEngine extends ForkJoinEngine
+{
+	protected final float	threshold;
+	
+	protected EgoIndex		index	= null;
+	
+	
+	protected LabelEngine(int numberOfThreads, float threshold, ProcessingStatus status, boolean verbose)
+	{
+		super(numberOfThreads, status, verbose);
+		this.threshold = threshold;
+	}
+	
+	
+	public void run(Collection<EgoVertex> agentList) throws Exception
+	{
+		agentList = reorder(agentList);
+		
+		findEgoCommunities(agentList);
+		
+		buildIndex(agentList);
+		
+		float[] labels = propagate(index);
+		
+		writeBack(agentList, labels);
+	}
+	
+	
+	/**
+	 * Propagate the smallest label along every edge that is similar at the threshold
+	 * 
+	 * @param index
+	 * @return - the final label of every slot
+	 */
+	protected abstract float[] propagate(EgoIndex index);
+	
+	
+	/**
+	 * Phase 2 - build the index and compute the overlap of every edge
+	 * 
+	 * @param agentList
+	 */
+	protected void buildIndex(Collection<EgoVertex> agentList)
+	{
+		if ( graph == null)
+			graph = CompactGraph.build(agentList, ordering);
+		
+		index = EgoIndex.build(graph, agentList);
+		
+		final int n = index.getNumberOfVertices();
+		
+		Parallel.forRange(pool, n, Parallel.grain(pool, n), new Parallel.Range() {
+			public void run(int from, int to) {
+				index.computeOverlap(from, to);
+			}
+		});
+	}
+	
+	
+	/**
+	 * Set the final IDs on the EgoCommunities of each vertex and record the special vertices.
+	 * A special neighbor takes the final ID of the neighbor's EgoCommunity holding this vertex.
+	 * 
+	 * @param agentList
+	 * @param labels
+	 */
+	protected void writeBack(Collection<EgoVertex> agentList, final float[] labels)
+	{
+		final int n = index.getNumberOfVertices();
+		
+		final EgoVertex[] byIndex = new EgoVertex[n];
+		for ( EgoVertex v : agentList)
+			byIndex[graph.indexOf(v.getId())] = v;
+		
+		final int[] offsets		= index.getOffsets();
+		final int[] adj			= index.getAdj();
+		final int[] reverse		= index.getReverse();
+		final int[] slotOffsets	= index.getSlotOffsets();
+		final int[] edgeSlot	= index.getEdgeSlot();
+		
+		Parallel.forRange(pool, n, Parallel.grain(pool, n), new Parallel.Range() {
+			public void run(int from, int to) {
+				for ( int u = from; u < to; u++)
+				{
+					EgoVertex v = byIndex[u];
+					
+					// the slots are in the order of the EgoCommunity list
+					int slot = slotOffsets[u];
+					for ( EgoCommunity ec : v.getAllEgoCommunity()) {
+						ec.setId(labels[slot++]);
+						ec.setChanged(false);
+					}
+					
+					for ( int p = offsets[u]; p < offsets[u + 1]; p++) {
+						if ( ! index.isSimilar(p, threshold))
+							v.addSpecial(graph.getId(adj[p]), labels[edgeSlot[reverse[p]]]);
+					}
+					
+					v.setSpecialCompleted();
+					v.setIdChanged(false);
+				}
+			}
+		});
+	}
+	
+	
+	/**
+	 * Lower the label of the slot with a compare-and-set loop.  The labels are held as float bits.
+	 * 
+	 * @param labels
+	 * @param slot
+	 * @param label
+	 * @return T/F - true if this call lowered the label
+	 */
+	protected static boolean lower(AtomicIntegerArray labels, int slot, float label)
+	{
+		while ( true )
+		{
+			int bits = labels.get(slot);
+			
+			if ( label >= Float.intBitsToFloat(bits) )
+				return false;
+			
+			if ( labels.compareAndSet(slot, bits, Float.floatToRawIntBits(label)) )
+				return true;
+		}
+	}
+	
+	
+	public void findSpecial(Collection<EgoVertex> agentList)
+	{
+		buildIndex(agentList);
+	}
+}
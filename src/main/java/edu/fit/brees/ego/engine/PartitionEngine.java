@@ -0,0 +1,271 @@
+/*
+ * 
+ * Copyright 2014 Bradley S. Rees
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License. 
+ *  
+ */
+package edu.fit.brees.ego.engine;
+
+import java.util.Arrays;
+
+import edu.fit.brees.ego.graph.EgoIndex;
+import edu.fit.brees.ego.graph.ProcessingStatus;
+import edu.fit.brees.ego.util.Parallel;
+
+
+/**
+ * Propagates the ego-community IDs over a partitioned graph, one worker per partition.
+ * 
+ * The vertices are split into contiguous pieces of a breadth first order of the graph, so most 
+ * edges stay inside a partition.  A worker owns the labels of its vertices' slots and is the only 
+ * one to write them, so there is no locking inside a partition.  Each superstep a worker applies 
+ * the messages sent to it, then propagates inside its partition until nothing changes.  Updates 
+ * for a vertex in another partition are batched into a buffer for that partition and delivered 
+ * in the next superstep.  The supersteps stop when no message is sent.
+ * 
+ * The buffers are double buffered by superstep: messages are written to one set while the 
+ * messages of the last superstep are read from the other, so a worker never reads a buffer 
+ * that another worker is adding to.
+ * 
+ * @author bradrees
+ *
+ */
+public class PartitionEngine extends LabelEngine
+{
+	
+	public PartitionEngine(int numberOfThreads, float threshold, ProcessingStatus status, boolean verbose)
+	{
+		super(numberOfThreads, threshold, status, verbose);
+	}
+	
+	
+	/**
+	 * A batch of label updates from one partition to another
+	 */
+	private static class Outbox
+	{
+		int[]	vertex	= new int[64];
+		int[]	slot	= new int[64];
+		float[]	label	= new float[64];
+		int		size	= 0;
+		
+		void add(int v, int s, float l)
+		{
+			if ( size == vertex.length) {
+				vertex	= Arrays.copyOf(vertex, size * 2);
+				slot	= Arrays.copyOf(slot, size * 2);
+				label	= Arrays.copyOf(label, size * 2);
+			}
+			
+			vertex[size]	= v;
+			slot[size]		= s;
+			label[size]		= l;
+			size++;
+		}
+	}
+	
+	
+	protected float[] propagate(final EgoIndex index)
+	{
+		final int n 			= index.getNumberOfVertices();
+		final int[] offsets		= index.getOffsets();
+		final int[] adj			= index.getAdj();
+		final int[] reverse		= index.getReverse();
+		final int[] edgeSlot	= index.getEdgeSlot();
+		
+		final float[] labels	= index.getSlotLabel().clone();
+		
+		final int k = Math.max(1, Math.min(numberOfThreads, n));
+		
+		// split a breadth first order into k pieces
+		final int[] order		= bfsOrder(index);
+		final int[] part		= new int[n];
+		final int[] partStart	= new int[k + 1];
+		
+		for ( int x = 0; x <= k; x++)
+			partStart[x] = (int)((long)n * x / k);
+		
+		for ( int x = 0; x < k; x++) {
+			for ( int y = partStart[x]; y < partStart[x + 1]; y++)
+				part[order[y]] = x;
+		}
+		
+		final boolean[] similar = new boolean[adj.length];
+		for ( int p = 0; p < adj.length; p++)
+			similar[p] = index.isSimilar(p, threshold);
+		
+		// outboxes[superstep & 1][from][to]
+		final Outbox[][][] outboxes = new Outbox[2][k][k];
+		for ( int b = 0; b < 2; b++) {
+			for ( int x = 0; x < k; x++) {
+				for ( int y = 0; y < k; y++)
+					outboxes[b][x][y] = new Outbox();
+			}
+		}
+		
+		// every vertex starts out active
+		final boolean[] active = new boolean[n];
+		Arrays.fill(active, true);
+		
+		final int[] sent = new int[k];
+		boolean first = true;
+		int step = 0;
+		
+		while ( true )
+		{
+			++iterationCount;
+			++step;
+			final boolean start = first;
+			
+			// written this superstep, and written the last one (read now)
+			final Outbox[][] outbox = outboxes[step & 1];
+			final Outbox[][] inbox	= outboxes[(step + 1) & 1];
+			
+			Parallel.forRange(pool, k, 1, new Parallel.Range() {
+				public void run(int from, int to) {
+					for ( int me = from; me < to; me++)
+					{
+						int[] work = new int[16];
+						int size = 0;
+						
+						if ( start ) {
+							for ( int y = partStart[me]; y < partStart[me + 1]; y++) {
+								if ( size == work.length)
+									work = Arrays.copyOf(work, size * 2);
+								work[size++] = order[y];
+							}
+						}
+						
+						// deliver the messages from the last superstep
+						for ( int src = 0; src < k; src++)
+						{
+							Outbox in = inbox[src][me];
+							
+							for ( int m = 0; m < in.size; m++)
+							{
+								int s = in.slot[m];
+								
+								if ( in.label[m] < labels[s]) {
+									labels[s] = in.label[m];
+									
+									int v = in.vertex[m];
+									if ( ! active[v]) {
+										active[v] = true;
+										if ( size == work.length)
+											work = Arrays.copyOf(work, size * 2);
+										work[size++] = v;
+									}
+								}
+							}
+							
+							in.size = 0;
+						}
+						
+						// propagate inside the partition
+						int count = 0;
+						
+						while ( size > 0)
+						{
+							int u = work[--size];
+							active[u] = false;
+							
+							for ( int p = offsets[u]; p < offsets[u + 1]; p++)
+							{
+								if ( ! similar[p])
+									continue;
+								
+								int v = adj[p];
+								int t = edgeSlot[reverse[p]];
+								float mine = labels[edgeSlot[p]];
+								
+								if ( part[v] != me) {
+									outbox[me][part[v]].add(v, t, mine);
+									count++;
+								}
+								else if ( mine < labels[t]) {
+									labels[t] = mine;
+									
+									if ( ! active[v]) {
+										active[v] = true;
+										if ( size == work.length)
+											work = Arrays.copyOf(work, size * 2);
+										work[size++] = v;
+									}
+								}
+							}
+						}
+						
+						sent[me] = count;
+					}
+				}
+			});
+			
+			first = false;
+			
+			int total = 0;
+			for ( int x = 0; x < k; x++)
+				total += sent[x];
+			
+			if ( verbose)
+				System.out.println("\tDone Superstep " + iterationCount + "  Boundary messages = " + total);
+			
+			if ( total == 0)
+				break;
+		}
+		
+		return labels;
+	}
+	
+	
+	/**
+	 * A breadth first order of all the vertices, one component after another
+	 * 
+	 * @param index
+	 * @return
+	 */
+	private static int[] bfsOrder(EgoIndex index)
+	{
+		int n 			= index.getNumberOfVertices();
+		int[] offsets	= index.getOffsets();
+		int[] adj		= index.getAdj();
+		
+		int[] order 		= new int[n];
+		boolean[] visited	= new boolean[n];
+		int tail = 0;
+		
+		for ( int root = 0; root < n; root++)
+		{
+			if ( visited[root])
+				continue;
+			
+			visited[root] = true;
+			int head = tail;
+			order[tail++] = root;
+			
+			while ( head < tail)
+			{
+				int u = order[head++];
+				
+				for ( int p = offsets[u]; p < offsets[u + 1]; p++) {
+					if ( ! visited[adj[p]]) {
+						visited[adj[p]] = true;
+						order[tail++] = adj[p];
+					}
+				}
+			}
+		}
+		
+		return order;
+	}
+}
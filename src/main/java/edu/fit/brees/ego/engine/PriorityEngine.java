@@ -0,0 +1,194 @@
+/*
+ * 
+ * Copyright 2014 Bradley S. Rees
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License. 
+ *  
+ */
+package edu.fit.brees.ego.engine;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import edu.fit.brees.ego.graph.EgoIndex;
+import edu.fit.brees.ego.graph.ProcessingStatus;
+import edu.fit.brees.ego.util.Parallel;
+
+
+/**
+ * Propagates the ego-community IDs smallest first.
+ * 
+ * The buckets are a priority queue over the current IDs: the slots are sorted by their initial 
+ * ID and split into buckets of consecutive IDs, and the buckets are run smallest first.  A slot 
+ * that is lowered takes an ID of the bucket being run, so it goes back into that bucket, and 
+ * the later buckets only start the slots that still hold their own ID.  Since the smaller IDs 
+ * have already swept out, most slots are only lowered once, instead of taking a series of 
+ * larger IDs that are later overwritten.
+ * 
+ * A bucket is run as a parallel frontier, level by level.  Each slot of the frontier pushes 
+ * its current ID to the similar slots with compare-and-set updates, and the slots that were 
+ * lowered are the frontier of the next level.  A large component is spread over all the 
+ * threads one level at a time, instead of being flooded by the thread that found it.
+ * 
+ * The iteration count is the number of levels over all the buckets.
+ * 
+ * @author bradrees
+ *
+ */
+public class PriorityEngine extends LabelEngine
+{
+	// the smallest number of slots in a bucket
+	private final int	bucketSize		= 1024;
+	
+	
+	public PriorityEngine(int numberOfThreads, float threshold, ProcessingStatus status, boolean verbose)
+	{
+		super(numberOfThreads, threshold, status, verbose);
+	}
+	
+	
+	protected float[] propagate(final EgoIndex index)
+	{
+		final int slots			= index.getNumberOfSlots();
+		final int[] reverse		= index.getReverse();
+		final int[] edgeSlot	= index.getEdgeSlot();
+		final float[] initial	= index.getSlotLabel();
+		
+		// the similar positions of each slot
+		final int[] slotPosOffsets	= new int[slots + 1];
+		final int[] slotPos			= new int[edgeSlot.length];
+		
+		for ( int p = 0; p < edgeSlot.length; p++) {
+			if ( index.isSimilar(p, threshold))
+				slotPosOffsets[edgeSlot[p] + 1]++;
+		}
+		for ( int s = 0; s < slots; s++)
+			slotPosOffsets[s + 1] += slotPosOffsets[s];
+		
+		int[] fill = Arrays.copyOf(slotPosOffsets, slots);
+		for ( int p = 0; p < edgeSlot.length; p++) {
+			if ( index.isSimilar(p, threshold))
+				slotPos[fill[edgeSlot[p]]++] = p;
+		}
+		
+		// the slots in order of their initial ID
+		long[] keys = new long[slots];
+		for ( int s = 0; s < slots; s++)
+			keys[s] = ((long)sortable(initial[s]) << 32) | s;
+		Arrays.sort(keys);
+		
+		final int[] order = new int[slots];
+		for ( int x = 0; x < slots; x++)
+			order[x] = (int)keys[x];
+		keys = null;
+		
+		final AtomicIntegerArray labels = new AtomicIntegerArray(slots);
+		for ( int s = 0; s < slots; s++)
+			labels.set(s, Float.floatToRawIntBits(initial[s]));
+		
+		final AtomicInteger lowered = new AtomicInteger();
+		final AtomicInteger tail	= new AtomicInteger();
+		
+		// the level a slot was last put in a frontier, so it is put there once
+		final AtomicIntegerArray queued = new AtomicIntegerArray(slots);
+		
+		int[] frontier	= new int[slots];
+		int[] next		= new int[slots];
+		int level = 0;
+		
+		int size = Math.max(bucketSize, slots / (numberOfThreads * 16));
+		
+		for ( int start = 0; start < slots; start += size)
+		{
+			// the slots of the bucket that still hold their own ID
+			int count = 0;
+			
+			for ( int x = start; x < Math.min(slots, start + size); x++) {
+				int s = order[x];
+				if ( labels.get(s) == Float.floatToRawIntBits(initial[s]))
+					frontier[count++] = s;
+			}
+			
+			while ( count > 0)
+			{
+				++iterationCount;
+				
+				final int[] in		= frontier;
+				final int[] out		= next;
+				final int stamp		= ++level;
+				
+				tail.set(0);
+				
+				Parallel.forRange(pool, count, Parallel.grain(pool, count), new Parallel.Range() {
+					public void run(int a, int b) {
+						int[] buf = new int[256];
+						int used = 0, changes = 0;
+						
+						for ( int x = a; x < b; x++)
+						{
+							int s = in[x];
+							float id = Float.intBitsToFloat(labels.get(s));
+							
+							for ( int q = slotPosOffsets[s]; q < slotPosOffsets[s + 1]; q++)
+							{
+								int t = edgeSlot[reverse[slotPos[q]]];
+								
+								if ( lower(labels, t, id)) {
+									changes++;
+									
+									if ( queued.getAndSet(t, stamp) != stamp) {
+										if ( used == buf.length) {
+											System.arraycopy(buf, 0, out, tail.getAndAdd(used), used);
+											used = 0;
+										}
+										buf[used++] = t;
+									}
+								}
+							}
+						}
+						
+						System.arraycopy(buf, 0, out, tail.getAndAdd(used), used);
+						lowered.addAndGet(changes);
+					}
+				});
+				
+				count		= tail.get();
+				frontier	= out;
+				next		= in;
+			}
+		}
+		
+		if ( verbose)
+			System.out.println("\tDone  " + lowered.get() + " ID changes over " + slots + " ego-communities");
+		
+		float[] result = new float[slots];
+		for ( int s = 0; s < slots; s++)
+			result[s] = Float.intBitsToFloat(labels.get(s));
+		
+		return result;
+	}
+	
+	
+	/**
+	 * The bits of a float as an int that sorts in the same order as the float
+	 * 
+	 * @param f
+	 * @return
+	 */
+	private static int sortable(float f)
+	{
+		int bits = Float.floatToIntBits(f);
+		return bits ^ ((bits >> 31) & 0x7fffffff);
+	}
+}
@@ -0,0 +1,93 @@
+/*
+ * 
+ * Copyright 2014 Bradley S. Rees
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License. 
+ *  
+ */
+package edu.fit.brees.ego.engine;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import edu.fit.brees.ego.graph.EgoVertex;
+import edu.fit.brees.ego.graph.ProcessingStatus;
+
+
+/**
+ * Runs the phases of the algorithm on a fixed thread pool, one task per EgoVertex.
+ * 
+ * @author bradrees
+ *
+ */
+public class ThreadPoolEngine extends DetectionEngine
+{
+	private final ExecutorService	es;
+	
+	
+	public ThreadPoolEngine(int numberOfThreads, ProcessingStatus status, boolean verbose)
+	{
+		super(numberOfThreads, status, verbose);
+		this.es = Executors.newFixedThreadPool(numberOfThreads);
+	}
+	
+	
+	public void extract(Collection<EgoVertex> agentList) throws Exception
+	{
+		List<Callable<Object>> tasks = new ArrayList<>(agentList.size());
+		
+		for ( final EgoVertex v : agentList) {
+			tasks.add( new Callable<Object>() {
+				public Object call() throws Exception {
+					v.buildEgoCommunities();
+					return null;
+				}
+			});
+		}
+		
+		es.invokeAll(tasks);
+	}
+	
+	
+	public void findSpecial(Collection<EgoVertex> agentList) throws Exception
+	{
+		List<Callable<Object>> tasks = new ArrayList<>(agentList.size());
+		
+		for ( final EgoVertex v : agentList) {
+			tasks.add( new Callable<Object>() {
+				public Object call() throws Exception {
+					v.determineSpecialNodes();
+					return null;
+				}
+			});
+		}
+		
+		es.invokeAll(tasks);
+	}
+	
+	
+	protected void push(Collection<EgoVertex> vertices) throws Exception
+	{
+		es.invokeAll(vertices);
+	}
+	
+	
+	public void shutdown()
+	{
+		es.shutdown();
+	}
+}
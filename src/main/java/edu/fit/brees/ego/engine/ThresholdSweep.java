@@ -0,0 +1,252 @@
+/*
+ * 
+ * Copyright 2014 Bradley S. Rees
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License. 
+ *  
+ */
+package edu.fit.brees.ego.engine;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import edu.fit.brees.ego.community.CommunityCollector;
+import edu.fit.brees.ego.graph.EgoIndex;
+
+
+/**
+ * Run the special vertex classification and the ID propagation for a range of overlap
+ * thresholds against a single set of extracted ego-communities.
+ *
+ * Each threshold only needs its own array of labels, so the thresholds can be run in parallel.
+ *
+ * @author bradrees
+ *
+ */
+public class ThresholdSweep
+{
+	private final EgoIndex	index;
+
+
+	/**
+	 * The result of one threshold
+	 */
+	public static class Result
+	{
+		public float	threshold;
+		public float[]	labels;				// final ID of each ego-community slot
+		public int		iterationCount;
+		public long		time;
+	}
+
+
+	public ThresholdSweep(EgoIndex index)
+	{
+		this.index = index;
+	}
+
+
+	/**
+	 * Parse a threshold range in the form  from:to:step   (e.g. 0.5:0.95:0.05)
+	 *
+	 * @param range
+	 * @return the list of thresholds
+	 */
+	public static float[] parseRange(String range)
+	{
+		String[] parts = range.split(":");
+
+		if ( parts.length != 3)
+			throw new IllegalArgumentException("Threshold range must be from:to:step  - " + range);
+
+		float from 	= Float.parseFloat(parts[0]);
+		float to	= Float.parseFloat(parts[1]);
+		float step	= Float.parseFloat(parts[2]);
+
+		if ( step <= 0 || to < from)
+			throw new IllegalArgumentException("Bad threshold range " + range);
+
+		// count in steps to avoid drift from adding floats
+		int count = (int)Math.floor( (to - from) / step + 1e-4) + 1;
+		float[] thresholds = new float[count];
+
+		for ( int x = 0; x < count; x++)
+			thresholds[x] = Math.round( (from + x * step) * 10000f) / 10000f;
+
+		return thresholds;
+	}
+
+
+	/**
+	 * Create a task for each threshold
+	 *
+	 * @param thresholds
+	 * @return
+	 */
+	public List<Callable<Result>> tasks(float[] thresholds)
+	{
+		List<Callable<Result>> tasks = new ArrayList<>();
+
+		for ( final float t : thresholds) {
+			tasks.add( new Callable<Result>() {
+				public Result call() throws Exception {
+					return propagate(t);
+				}
+			});
+		}
+
+		return tasks;
+	}
+
+
+	/**
+	 * Propagate the smallest ego-community ID along all edges that are not special at
+	 * the threshold.  This is the same process as EgoVertex.pushIdChange, run on a private
+	 * copy of the labels.
+	 *
+	 * @param threshold
+	 * @return
+	 */
+	public Result propagate(float threshold)
+	{
+		long start = System.currentTimeMillis();
+
+		int n 				= index.getNumberOfVertices();
+		int[] offsets		= index.getOffsets();
+		int[] adj			= index.getAdj();
+		int[] reverse		= index.getReverse();
+		int[] slotOffsets	= index.getSlotOffsets();
+		int[] edgeSlot		= index.getEdgeSlot();
+
+		float[]   labels	= index.getSlotLabel().clone();
+		boolean[] changed	= new boolean[labels.length];
+		boolean[] active	= new boolean[n];
+
+		int[] frontier		= new int[n];
+		int[] next			= new int[n];
+		int frontierSize	= n;
+
+		for ( int v = 0; v < n; v++) {
+			frontier[v] = v;
+			active[v] = true;
+		}
+		Arrays.fill(changed, true);
+
+		int iterations = 0;
+
+		while ( frontierSize > 0)
+		{
+			++iterations;
+			int nextSize = 0;
+
+			for ( int f = 0; f < frontierSize; f++)
+			{
+				int u = frontier[f];
+				active[u] = false;
+
+				for ( int p = offsets[u]; p < offsets[u + 1]; p++)
+				{
+					int s = edgeSlot[p];
+
+					if ( changed[s] && index.isSimilar(p, threshold))
+					{
+						int theirs = edgeSlot[reverse[p]];
+
+						if ( labels[s] < labels[theirs]) {
+							labels[theirs] 	= labels[s];
+							changed[theirs]	= true;
+
+							int v = adj[p];
+							if ( ! active[v]) {
+								active[v] = true;
+								next[nextSize++] = v;
+							}
+						}
+					}
+				}
+
+				for ( int s = slotOffsets[u]; s < slotOffsets[u + 1]; s++)
+					changed[s] = false;
+			}
+
+			int[] tmp 	= frontier;
+			frontier 	= next;
+			next		= tmp;
+			frontierSize = nextSize;
+		}
+
+		Result r 			= new Result();
+		r.threshold 		= threshold;
+		r.labels 			= labels;
+		r.iterationCount	= iterations;
+		r.time				= System.currentTimeMillis() - start;
+
+		return r;
+	}
+
+
+	/**
+	 * Organize the labels of one threshold into communities
+	 *
+	 * @param r
+	 * @return
+	 */
+	public CommunityCollector collect(Result r)
+	{
+		CommunityCollector collector = new CommunityCollector();
+
+		int n 				= index.getNumberOfVertices();
+		int[] offsets		= index.getOffsets();
+		int[] adj			= index.getAdj();
+		int[] reverse		= index.getReverse();
+		int[] slotOffsets	= index.getSlotOffsets();
+		int[] slotSize		= index.getSlotSize();
+		int[] edgeSlot		= index.getEdgeSlot();
+
+		List<Integer> pair = new ArrayList<>(2);
+
+		// in order of ID, the size 2 ego-communities depend on the order they are seen
+		for ( int k = 0; k < n; k++)
+		{
+			int u = index.getGraph().indexInIdOrder(k);
+			int vertexID = index.getId(u);
+
+			for ( int s = slotOffsets[u]; s < slotOffsets[u + 1]; s++)
+			{
+				pair.clear();
+
+				if ( slotSize[s] == 2) {
+					pair.add(vertexID);
+
+					for ( int p = offsets[u]; p < offsets[u + 1]; p++) {
+						if ( edgeSlot[p] == s)
+							pair.add(index.getId(adj[p]));
+					}
+				}
+
+				collector.add(r.labels[s], slotSize[s], pair, vertexID);
+			}
+
+			// the special neighbors join the community of the neighbor's ego-community
+			for ( int p = offsets[u]; p < offsets[u + 1]; p++)
+			{
+				if ( ! index.isSimilar(p, r.threshold))
+					collector.add(r.labels[edgeSlot[reverse[p]]], 1, pair, vertexID);
+			}
+		}
+
+		return collector;
+	}
+}
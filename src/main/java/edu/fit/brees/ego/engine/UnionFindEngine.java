@@ -0,0 +1,108 @@
+/*
+ * 
+ * Copyright 2014 Bradley S. Rees
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License. 
+ *  
+ */
+package edu.fit.brees.ego.engine;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import edu.fit.brees.ego.graph.EgoIndex;
+import edu.fit.brees.ego.graph.ProcessingStatus;
+import edu.fit.brees.ego.util.ConcurrentUnionFind;
+import edu.fit.brees.ego.util.Parallel;
+
+
+/**
+ * Finds the final ego-community IDs without propagating them.
+ * 
+ * The smallest ID spreads along every edge whose two views are similar, and the similar test 
+ * is symmetric, so the final ID of an ego-community is the smallest initial ID in its connected 
+ * component of the ego-community graph.  The components are found with one parallel pass of 
+ * union operations over the slots, then the smallest ID of each component is found with a 
+ * second pass.  There is no iteration loop, so the time does not depend on the diameter of 
+ * the communities.
+ * 
+ * @author bradrees
+ *
+ */
+public class UnionFindEngine extends LabelEngine
+{
+	
+	public UnionFindEngine(int numberOfThreads, float threshold, ProcessingStatus status, boolean verbose)
+	{
+		super(numberOfThreads, threshold, status, verbose);
+	}
+	
+	
+	protected float[] propagate(final EgoIndex index)
+	{
+		final int n 			= index.getNumberOfVertices();
+		final int slots			= index.getNumberOfSlots();
+		final int[] offsets		= index.getOffsets();
+		final int[] adj			= index.getAdj();
+		final int[] reverse		= index.getReverse();
+		final int[] slotOffsets	= index.getSlotOffsets();
+		final int[] edgeSlot	= index.getEdgeSlot();
+		final float[] initial	= index.getSlotLabel();
+		
+		final ConcurrentUnionFind uf = new ConcurrentUnionFind(slots);
+		
+		// link the two views of every similar edge, once per edge
+		Parallel.forRange(pool, n, Parallel.grain(pool, n), new Parallel.Range() {
+			public void run(int from, int to) {
+				for ( int u = from; u < to; u++) {
+					for ( int p = offsets[u]; p < offsets[u + 1]; p++) {
+						if ( adj[p] > u && index.isSimilar(p, threshold))
+							uf.union(edgeSlot[p], edgeSlot[reverse[p]]);
+					}
+				}
+			}
+		});
+		
+		// the smallest initial ID of each component, kept at the root
+		final AtomicIntegerArray min = new AtomicIntegerArray(slots);
+		final int[] root = new int[slots];
+		
+		Parallel.forRange(pool, n, Parallel.grain(pool, n), new Parallel.Range() {
+			public void run(int from, int to) {
+				for ( int s = slotOffsets[from]; s < slotOffsets[to]; s++) {
+					root[s] = uf.find(s);
+					min.set(s, Float.floatToRawIntBits(Float.MAX_VALUE));
+				}
+			}
+		});
+		
+		Parallel.forRange(pool, n, Parallel.grain(pool, n), new Parallel.Range() {
+			public void run(int from, int to) {
+				for ( int s = slotOffsets[from]; s < slotOffsets[to]; s++)
+					lower(min, root[s], initial[s]);
+			}
+		});
+		
+		final float[] labels = new float[slots];
+		
+		Parallel.forRange(pool, n, Parallel.grain(pool, n), new Parallel.Range() {
+			public void run(int from, int to) {
+				for ( int s = slotOffsets[from]; s < slotOffsets[to]; s++)
+					labels[s] = Float.intBitsToFloat(min.get(root[s]));
+			}
+		});
+		
+		iterationCount = 1;
+		
+		return labels;
+	}
+}
@@ -0,0 +1,393 @@
+/*
+ * 
+ * Copyright 2014 Bradley S. Rees
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License. 
+ *  
+ */
+package edu.fit.brees.ego.external;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.StringTokenizer;
+
+
+/**
+ * The network held as flat lists, for graphs too large for EgoVertex objects.  With a work 
+ * directory the lists are memory-mapped files, for graphs that do not fit in memory, without 
+ * one they are HeapIntArrays.
+ * 
+ * Only the offsets (one long per vertex) are kept in memory.  Two lists are written to disk:
+ * 
+ * 	raw.bin	- the neighbors of each vertex in the order they are read, duplicates included.
+ * 				  This is the order the EgoVertex neighbor table is built in.
+ * 	adj.bin	- the neighbors of each vertex sorted, without duplicates or self loops
+ * 
+ * The input is the same form as DataReader.  The vertex IDs are startIdx .. startIdx+n-1 and 
+ * vertex u is held at index u - startIdx.  The file is read twice and never held in memory.
+ * 
+ * With a work directory the lists are built with an external bucket sort, so the files are 
+ * only written in order: the second read appends each edge to the bucket file of the range
+ * of vertices its source is in, then each bucket (at most BLOCK positions) is put in order of 
+ * source in memory and written out.
+ * 
+ * @author bradrees
+ *
+ */
+public class DiskGraph
+{
+	/** the most positions held in memory at once, for a bucket or a partition of the lists */
+	static final int	BLOCK	= 1 << 24;
+	
+	private int		numberOfVertices	= 0;
+	private long	numberOfEdges		= 0;
+	private int		startIdx			= 1;
+	private int		maxDegree			= 0;
+	
+	private long[]	rawOffsets			= null;
+	private long[]	offsets				= null;
+	
+	private IntColumn		raw			= null;
+	private IntColumn		adj			= null;
+	
+	
+	/**
+	 * Read the graph file into the work directory
+	 * 
+	 * @param inputFile
+	 * @param startIdx
+	 * @param dir	- null to hold the lists on the heap
+	 * @return
+	 * @throws IOException
+	 */
+	public static DiskGraph build(String inputFile, int startIdx, File dir) throws IOException
+	{
+		DiskGraph g = new DiskGraph();
+		g.startIdx = startIdx;
+		
+		if ( dir != null)
+			dir.mkdirs();
+		
+		// pass 1 - count
+		int[] count = g.read(inputFile, null);
+		int n = g.numberOfVertices;
+		
+		g.rawOffsets = new long[n + 1];
+		for ( int u = 0; u < n; u++) {
+			g.rawOffsets[u + 1] = g.rawOffsets[u] + count[u];
+			g.maxDegree = Math.max(g.maxDegree, count[u]);
+		}
+		count = null;
+		
+		g.raw 		= column(dir, "raw.bin", g.rawOffsets[n]);
+		g.adj 		= column(dir, "adj.bin", g.rawOffsets[n]);
+		g.offsets	= new long[n + 1];
+		
+		// pass 2 - fill the raw lists, then sort each list
+		if ( dir == null)
+			g.fill(inputFile);
+		else
+			g.bucketSort(inputFile, dir);
+		
+		return g;
+	}
+	
+	
+	/**
+	 * Create a column in the work directory, or on the heap if there is none
+	 * 
+	 * @param dir
+	 * @param name
+	 * @param length
+	 * @return
+	 * @throws IOException
+	 */
+	static IntColumn column(File dir, String name, long length) throws IOException
+	{
+		if ( dir == null)
+			return new HeapIntArray(length);
+		
+		return new MappedIntArray(new File(dir, name), length);
+	}
+	
+	
+	/**
+	 * Split the vertices into ranges of at most size positions.  A vertex with more positions 
+	 * is a range of its own.
+	 * 
+	 * @param offsets
+	 * @param size
+	 * @return the first vertex of each range, and the number of vertices at the end
+	 */
+	static int[] blocks(long[] offsets, long size)
+	{
+		int n = offsets.length - 1;
+		int[] start = new int[n + 1];
+		int count = 0;
+		
+		for ( int u = 0; u < n; u++) {
+			if ( u == 0 || offsets[u + 1] - offsets[start[count - 1]] > size)
+				start[count++] = u;
+		}
+		start[count++] = n;
+		
+		return Arrays.copyOf(start, count);
+	}
+	
+	
+	/**
+	 * The lists on the heap are filled in place
+	 */
+	private void fill(String inputFile) throws IOException
+	{
+		final long[] cursor = Arrays.copyOf(rawOffsets, numberOfVertices);
+		
+		read(inputFile, new EdgeSink() {
+			public void edge(int a, int b) {
+				raw.set(cursor[a]++, b + startIdx);
+				raw.set(cursor[b]++, a + startIdx);
+			}
+		});
+		
+		int[] buf = new int[maxDegree];
+		
+		for ( int u = 0; u < numberOfVertices; u++) {
+			int deg = (int)(rawOffsets[u + 1] - rawOffsets[u]);
+			raw.read(rawOffsets[u], buf, deg);
+			addSorted(u, buf, deg);
+		}
+	}
+	
+	
+	/**
+	 * Append each edge to the bucket of its source, then put each bucket in order and write 
+	 * the raw and sorted lists of its vertices
+	 */
+	private void bucketSort(String inputFile, File dir) throws IOException
+	{
+		final int[] bucketStart = blocks(rawOffsets, BLOCK);
+		final int buckets = bucketStart.length - 1;
+		
+		final DataOutputStream[] out = new DataOutputStream[buckets];
+		for ( int b = 0; b < buckets; b++)
+			out[b] = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(bucketFile(dir, b))));
+		
+		read(inputFile, new EdgeSink() {
+			public void edge(int a, int b) throws IOException {
+				DataOutputStream o = out[bucket(bucketStart, a)];
+				o.writeInt(a);
+				o.writeInt(b + startIdx);
+				
+				o = out[bucket(bucketStart, b)];
+				o.writeInt(b);
+				o.writeInt(a + startIdx);
+			}
+		});
+		
+		for ( int b = 0; b < buckets; b++)
+			out[b].close();
+		
+		int[] buf = new int[maxDegree];
+		
+		for ( int b = 0; b < buckets; b++)
+		{
+			int lo = bucketStart[b], hi = bucketStart[b + 1];
+			long base = rawOffsets[lo];
+			int size = (int)(rawOffsets[hi] - base);
+			
+			// stable, so each list keeps the order it was read in
+			int[] list = new int[size];
+			int[] cursor = new int[hi - lo];
+			for ( int u = lo; u < hi; u++)
+				cursor[u - lo] = (int)(rawOffsets[u] - base);
+			
+			File file = bucketFile(dir, b);
+			DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+			
+			for ( int x = 0; x < size; x++) {
+				int u = in.readInt();
+				list[cursor[u - lo]++] = in.readInt();
+			}
+			
+			in.close();
+			file.delete();
+			
+			for ( int x = 0; x < size; x++)
+				raw.set(base + x, list[x]);
+			
+			for ( int u = lo; u < hi; u++) {
+				int deg = (int)(rawOffsets[u + 1] - rawOffsets[u]);
+				System.arraycopy(list, (int)(rawOffsets[u] - base), buf, 0, deg);
+				addSorted(u, buf, deg);
+			}
+		}
+	}
+	
+	
+	private static File bucketFile(File dir, int b)
+	{
+		return new File(dir, "bucket-" + b + ".bin");
+	}
+	
+	
+	/**
+	 * The bucket of a vertex, the last range that starts at or before it
+	 */
+	private static int bucket(int[] bucketStart, int u)
+	{
+		int b = Arrays.binarySearch(bucketStart, u);
+		return ( b >= 0) ? b : -b - 2;
+	}
+	
+	
+	/**
+	 * Sort the raw list of vertex u and write it without duplicates or self loops.  The 
+	 * vertices must be added in order.
+	 */
+	private void addSorted(int u, int[] buf, int deg)
+	{
+		Arrays.sort(buf, 0, deg);
+		
+		long p = offsets[u];
+		int id = getId(u);
+		
+		for ( int x = 0; x < deg; x++) {
+			if ( buf[x] != id && ( x == 0 || buf[x] != buf[x - 1]))
+				adj.set(p++, buf[x] - startIdx);
+		}
+		
+		offsets[u + 1] = p;
+	}
+	
+	
+	/**
+	 * Read the file.  With no sink the neighbors are counted, otherwise each edge goes to the 
+	 * sink as two vertex indexes
+	 * 
+	 * @return the count of neighbors of each vertex (pass 1)
+	 */
+	private int[] read(String inputFile, EdgeSink sink) throws IOException
+	{
+		BufferedReader buffRead = new BufferedReader(new FileReader(inputFile));
+		
+		int[] count = null;
+		boolean edges = false;
+		String line = buffRead.readLine();
+		
+		while (line != null)
+		{
+			if ( line.startsWith("#") )
+			{
+				// comment line so skip
+			}
+			else if ( line.startsWith("*") )
+			{
+				edges = line.contains("Edges") || line.contains("Arcs");
+				
+				if ( line.contains("Vertices")) {
+					numberOfVertices = Integer.parseInt(line.substring(line.indexOf("Vertices") + 9).trim());
+					count = new int[numberOfVertices];
+				}
+			}
+			else if ( edges )
+			{
+				StringTokenizer strTok = new StringTokenizer(line);
+				
+				int a = Integer.parseInt(strTok.nextToken()) - startIdx;
+				int b = Integer.parseInt(strTok.nextToken()) - startIdx;
+				
+				if ( count == null || a < 0 || b < 0 || a >= numberOfVertices || b >= numberOfVertices) {
+					buffRead.close();
+					throw new IOException("vertex ID out of range on line: " + line);
+				}
+				
+				if ( sink == null) {
+					count[a]++;
+					count[b]++;
+					numberOfEdges++;
+				} else {
+					sink.edge(a, b);
+				}
+			}
+			
+			line = buffRead.readLine();
+		}
+		
+		buffRead.close();
+		return count;
+	}
+	
+	
+	public int getNumberOfVertices() {
+		return numberOfVertices;
+	}
+	
+	public long getNumberOfEdges() {
+		return numberOfEdges;
+	}
+	
+	public int getMaxDegree() {
+		return maxDegree;
+	}
+	
+	public int getId(int u) {
+		return u + startIdx;
+	}
+	
+	public long[] getRawOffsets() {
+		return rawOffsets;
+	}
+	
+	public long[] getOffsets() {
+		return offsets;
+	}
+	
+	/** the neighbor IDs in the order they were read */
+	public IntColumn getRaw() {
+		return raw;
+	}
+	
+	/** the sorted neighbor indexes */
+	public IntColumn getAdj() {
+		return adj;
+	}
+	
+	public long getNumberOfPositions() {
+		return offsets[numberOfVertices];
+	}
+	
+	
+	public void close() throws IOException
+	{
+		raw.close();
+		adj.close();
+	}
+	
+	
+	/**
+	 * Where the second read puts each edge
+	 */
+	private interface EdgeSink
+	{
+		public void edge(int a, int b) throws IOException;
+	}
+}
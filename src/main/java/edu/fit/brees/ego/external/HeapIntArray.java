@@ -0,0 +1,93 @@
+/*
+ * 
+ * Copyright 2014 Bradley S. Rees
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License. 
+ *  
+ */
+package edu.fit.brees.ego.external;
+
+
+/**
+ * An array of ints on the heap that can be longer than a Java array.  It is held in segments
+ * of the same size as a MappedIntArray.
+ * 
+ * A few large int arrays are a handful of objects to the garbage collector, no matter how
+ * many vertices they describe.
+ * 
+ * @author bradrees
+ *
+ */
+public class HeapIntArray implements IntColumn
+{
+	private static final int	SEGMENT_BITS	= 28;					// 1GB of ints per segment
+	private static final long	SEGMENT_SIZE	= 1L << SEGMENT_BITS;
+	private static final long	SEGMENT_MASK	= SEGMENT_SIZE - 1;
+	
+	private final long		length;
+	private final int[][]	segment;
+	
+	
+	public HeapIntArray(long length)
+	{
+		this.length = length;
+		
+		int segments = (int)((length + SEGMENT_SIZE - 1) >>> SEGMENT_BITS);
+		segment = new int[Math.max(1, segments)][];
+		
+		for ( int s = 0; s < segment.length; s++) {
+			long start = (long)s << SEGMENT_BITS;
+			segment[s] = new int[(int)Math.max(0, Math.min(SEGMENT_SIZE, length - start))];
+		}
+	}
+	
+	
+	public int get(long index)
+	{
+		return segment[(int)(index >>> SEGMENT_BITS)][(int)(index & SEGMENT_MASK)];
+	}
+	
+	
+	public void set(long index, int value)
+	{
+		segment[(int)(index >>> SEGMENT_BITS)][(int)(index & SEGMENT_MASK)] = value;
+	}
+	
+	
+	public void read(long from, int[] dest, int count)
+	{
+		int s = (int)(from >>> SEGMENT_BITS);
+		int i = (int)(from & SEGMENT_MASK);
+		
+		// a single copy unless the range crosses a segment
+		if ( i + count <= segment[s].length) {
+			System.arraycopy(segment[s], i, dest, 0, count);
+			return;
+		}
+		
+		for ( int x = 0; x < count; x++)
+			dest[x] = get(from + x);
+	}
+	
+	
+	public long length()
+	{
+		return length;
+	}
+	
+	
+	public void close()
+	{
+		;
+	}
+}
@@ -0,0 +1,50 @@
+/*
+ * 
+ * Copyright 2014 Bradley S. Rees
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License. 
+ *  
+ */
+package edu.fit.brees.ego.external;
+
+import java.io.IOException;
+
+
+/**
+ * A column of ints indexed by a long, one entry per vertex or per adjacency position.
+ * The column is either on the heap (HeapIntArray) or in a file (MappedIntArray).
+ * 
+ * Reads and writes are absolute, so threads can use different parts of the column at once.
+ * 
+ * @author bradrees
+ *
+ */
+public interface IntColumn
+{
+	public int get(long index);
+	
+	public void set(long index, int value);
+	
+	/**
+	 * Copy a range into an array
+	 * 
+	 * @param from
+	 * @param dest
+	 * @param count
+	 */
+	public void read(long from, int[] dest, int count);
+	
+	public long length();
+	
+	public void close() throws IOException;
+}
@@ -0,0 +1,109 @@
+/*
+ * 
+ * Copyright 2014 Bradley S. Rees
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License. 
+ *  
+ */
+package edu.fit.brees.ego.external;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+
+/**
+ * An array of ints held in a memory-mapped file.  A single mapping is limited to 2GB, 
+ * so the file is mapped in segments and the index is a long.
+ * 
+ * Reads and writes are absolute, so threads can use different parts of the array at once.
+ * 
+ * @author bradrees
+ *
+ */
+public class MappedIntArray implements IntColumn
+{
+	private static final int	SEGMENT_BITS	= 28;					// 1GB of ints per segment
+	private static final long	SEGMENT_SIZE	= 1L << SEGMENT_BITS;
+	private static final long	SEGMENT_MASK	= SEGMENT_SIZE - 1;
+	
+	private final long					length;
+	private final RandomAccessFile		file;
+	private final MappedByteBuffer[]	segment;
+	
+	
+	/**
+	 * Create (or reuse) the file and map it
+	 * 
+	 * @param path
+	 * @param length	- number of ints
+	 * @throws IOException
+	 */
+	public MappedIntArray(File path, long length) throws IOException
+	{
+		this.length	= length;
+		this.file	= new RandomAccessFile(path, "rw");
+		file.setLength(length * 4);
+		
+		int segments = (int)((length + SEGMENT_SIZE - 1) >>> SEGMENT_BITS);
+		segment = new MappedByteBuffer[Math.max(1, segments)];
+		
+		FileChannel channel = file.getChannel();
+		
+		for ( int s = 0; s < segment.length; s++) {
+			long start = (long)s << SEGMENT_BITS;
+			long size  = Math.min(SEGMENT_SIZE, length - start);
+			segment[s] = channel.map(FileChannel.MapMode.READ_WRITE, start * 4, Math.max(0, size) * 4);
+		}
+	}
+	
+	
+	public int get(long index)
+	{
+		return segment[(int)(index >>> SEGMENT_BITS)].getInt( (int)(index & SEGMENT_MASK) * 4);
+	}
+	
+	
+	public void set(long index, int value)
+	{
+		segment[(int)(index >>> SEGMENT_BITS)].putInt( (int)(index & SEGMENT_MASK) * 4, value);
+	}
+	
+	
+	/**
+	 * Copy a range into an array
+	 * 
+	 * @param from
+	 * @param dest
+	 * @param count
+	 */
+	public void read(long from, int[] dest, int count)
+	{
+		for ( int x = 0; x < count; x++)
+			dest[x] = get(from + x);
+	}
+	
+	
+	public long length()
+	{
+		return length;
+	}
+	
+	
+	public void close() throws IOException
+	{
+		file.close();
+	}
+}
@@ -0,0 +1,585 @@
+/*
+ * 
+ * Copyright 2014 Bradley S. Rees
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License. 
+ *  
+ */
+package edu.fit.brees.ego.external;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Hashtable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import edu.fit.brees.ego.community.ParallelCollector;
+import edu.fit.brees.ego.util.ExtractEgoCommunities;
+import edu.fit.brees.ego.util.Parallel;
+
+
+/**
+ * Semi-external detection: the label of every ego-community is held in memory, everything that 
+ * grows with the number of edges stays in memory-mapped files in the work directory.
+ * 
+ * Without a work directory the same columns are HeapIntArrays.  The whole state of the graph 
+ * is then a few flat arrays in place of the EgoVertex and EgoCommunity objects, which keeps 
+ * the memory and the garbage collection down on large graphs.
+ * 
+ * 	slot.bin	- for each position (u,v), the slot of u's ego-community holding v
+ * 	link.bin	- for each position (u,v), the slot of v's ego-community holding u.  It is stored as
+ * 				  -(slot+1) if the edge is special.
+ * 
+ * The phases are sweeps over the vertices in index order:
+ * 
+ * 	extract		find the ego-communities of each vertex from the sorted lists (parallel)
+ * 	special		run the special test on each edge, once per edge (parallel)
+ * 	propagate	lower the labels in place until a sweep changes nothing (parallel)
+ * 
+ * Extract and special need the list of every neighbor v of u.  The lists are split into 
+ * partitions of at most DiskGraph.BLOCK positions, and each partition is read into memory once
+ * and matched against a sweep over all the vertices, so the files are read in order and a
+ * neighbor list is never read from the file on its own.
+ * 
+ * The ego-communities are numbered and ordered the same way as ExtractEgoCommunities, and the 
+ * vertices are collected in the order of the driver's vertex table, so the communities are
+ * the same as in memory.
+ * 
+ * @author bradrees
+ *
+ */
+public class SemiExternalDetector
+{
+	private final DiskGraph		graph;
+	private final File			dir;
+	private final float			threshold;
+	private final ForkJoinPool	pool;
+	private final boolean		verbose;
+	
+	// the ego-communities
+	private int[]	slotOffsets	= null;
+	private float[]	labels		= null;
+	private int[]	slotSize	= null;
+	
+	private IntColumn	slot	= null;
+	private IntColumn	link	= null;
+	
+	private int		iterationCount	= 0;
+	
+	
+	public SemiExternalDetector(DiskGraph graph, File dir, float threshold, int numberOfThreads, boolean verbose)
+	{
+		this.graph		= graph;
+		this.dir		= dir;
+		this.threshold	= threshold;
+		this.pool		= new ForkJoinPool(numberOfThreads);
+		this.verbose	= verbose;
+	}
+	
+	
+	public void run() throws IOException
+	{
+		extract();
+		findSpecial();
+		propagate();
+	}
+	
+	
+	/**
+	 * Find the ego-communities.  The neighbors in the same connected piece of the ego-net are 
+	 * found with a union-find over the sorted neighbor list, the edges between the neighbors 
+	 * are the common neighbors of the ego-vertex and each neighbor.
+	 * 
+	 * The union-find of each vertex is kept in parent.bin between the partitions, and the 
+	 * groups are numbered with the last partition.
+	 */
+	private void extract() throws IOException
+	{
+		final int n 			= graph.getNumberOfVertices();
+		final long[] offsets	= graph.getOffsets();
+		final long[] rawOffsets	= graph.getRawOffsets();
+		final IntColumn adj	= graph.getAdj();
+		final IntColumn raw	= graph.getRaw();
+		final int maxDegree		= graph.getMaxDegree();
+		
+		long positions = graph.getNumberOfPositions();
+		
+		slot = DiskGraph.column(dir, "slot.bin", positions);
+		
+		// the group number and size of each local slot, at most one per position
+		final IntColumn groupId		= DiskGraph.column(dir, "group.bin", positions);
+		final IntColumn groupSize	= DiskGraph.column(dir, "size.bin", positions);
+		
+		final int[] part = DiskGraph.blocks(offsets, DiskGraph.BLOCK);
+		final int parts = part.length - 1;
+		
+		final IntColumn parentOf = ( parts > 1) ? DiskGraph.column(dir, "parent.bin", positions) : null;
+		
+		final int[] ecCount = new int[n];
+		
+		for ( int j = 0; j < parts; j++)
+		{
+			final int lo 		= part[j];
+			final int hi 		= part[j + 1];
+			final long base		= offsets[lo];
+			final int[] lists	= read(adj, base, offsets[hi]);
+			
+			final boolean first	= j == 0;
+			final boolean last	= j == parts - 1;
+			
+			Parallel.forRange(pool, n, Parallel.grain(pool, n), new Parallel.Range() {
+				public void run(int from, int to) {
+					int[] nbr		= new int[maxDegree];
+					int[] parent	= new int[maxDegree];
+					int[] rawList	= new int[maxDegree];
+					int[] groupOf	= new int[maxDegree];
+					int[] members	= new int[maxDegree + 1];
+					int[] localSlot	= new int[maxDegree + 1];
+					
+					for ( int u = from; u < to; u++)
+					{
+						int deg = (int)(offsets[u + 1] - offsets[u]);
+						adj.read(offsets[u], nbr, deg);
+						
+						if ( first) {
+							for ( int x = 0; x < deg; x++)
+								parent[x] = x;
+						} else {
+							parentOf.read(offsets[u], parent, deg);
+						}
+						
+						// neighbors i and j are linked if j is a neighbor of i, for the neighbors in this partition
+						for ( int i = lowerBound(nbr, 0, deg, lo); i < deg && nbr[i] < hi; i++)
+						{
+							int v = nbr[i];
+							int b 		= (int)(offsets[v] - base);
+							int vEnd	= (int)(offsets[v + 1] - base);
+							
+							int a = i + 1;
+							while ( a < deg && b < vEnd) {
+								if ( nbr[a] < lists[b])
+									a++;
+								else if ( nbr[a] > lists[b])
+									b++;
+								else {
+									union(parent, i, a);
+									a++; b++;
+								}
+							}
+						}
+						
+						if ( ! last) {
+							for ( int x = 0; x < deg; x++)
+								parentOf.set(offsets[u] + x, parent[x]);
+							continue;
+						}
+						
+						// the neighbor order of the EgoVertex neighbor table
+						int id = graph.getId(u);
+						int rawDeg = (int)(rawOffsets[u + 1] - rawOffsets[u]);
+						raw.read(rawOffsets[u], rawList, rawDeg);
+						
+						Hashtable<Integer, Boolean> table = new Hashtable<>();
+						for ( int x = 0; x < rawDeg; x++)
+							table.put(rawList[x], Boolean.TRUE);
+						
+						int[] friends = new int[table.size()];
+						int count = 0;
+						for ( Integer f : table.keySet()) {
+							if ( f != id)
+								friends[count++] = Arrays.binarySearch(nbr, 0, deg, f - (id - u));
+						}
+						
+						// number the groups the same way as ExtractEgoCommunities
+						Arrays.fill(groupOf, 0, deg, 0);
+						Hashtable<Integer, Integer> groups = new Hashtable<>();
+						
+						for ( int x = count - 1; x >= 0; x--)
+						{
+							int r = find(parent, friends[x]);
+							
+							if ( groupOf[r] == 0) {
+								groupOf[r] = groups.size() + 1;
+								groups.put(groupOf[r], groupOf[r]);
+								members[groupOf[r]] = 1;
+							}
+							
+							members[groupOf[r]]++;
+						}
+						
+						int k = 0;
+						for ( Integer g : groups.values()) {
+							localSlot[g] = k;
+							groupId.set(offsets[u] + k, g);
+							groupSize.set(offsets[u] + k, members[g]);
+							k++;
+						}
+						ecCount[u] = k;
+						
+						for ( int q = 0; q < deg; q++)
+							slot.set(offsets[u] + q, localSlot[groupOf[find(parent, q)]]);
+					}
+				}
+			});
+		}
+		
+		if ( parentOf != null) {
+			parentOf.close();
+			if ( dir != null)
+				new File(dir, "parent.bin").delete();
+		}
+		
+		slotOffsets = new int[n + 1];
+		for ( int u = 0; u < n; u++)
+			slotOffsets[u + 1] = slotOffsets[u] + ecCount[u];
+		
+		labels		= new float[slotOffsets[n]];
+		slotSize	= new int[slotOffsets[n]];
+		
+		Parallel.forRange(pool, n, Parallel.grain(pool, n), new Parallel.Range() {
+			public void run(int from, int to) {
+				for ( int u = from; u < to; u++)
+				{
+					for ( int j = 0; j < slotOffsets[u + 1] - slotOffsets[u]; j++) {
+						labels[slotOffsets[u] + j] 		= ExtractEgoCommunities.egoCommunityId(graph.getId(u), groupId.get(offsets[u] + j));
+						slotSize[slotOffsets[u] + j]	= groupSize.get(offsets[u] + j);
+					}
+					
+					for ( long p = offsets[u]; p < offsets[u + 1]; p++)
+						slot.set(p, slotOffsets[u] + slot.get(p));
+				}
+			}
+		});
+		
+		groupId.close();
+		groupSize.close();
+		if ( dir != null) {
+			new File(dir, "group.bin").delete();
+			new File(dir, "size.bin").delete();
+		}
+		
+		if ( verbose)
+			System.out.println("\tFound " + labels.length + " ego-communities" + 
+					( parts > 1 ? " in " + parts + " partitions" : ""));
+	}
+	
+	
+	/**
+	 * Run the special test on each edge.  The two views of (u,v) share u, v and the common 
+	 * neighbors.
+	 * 
+	 * An edge (u,v) with u < v is tested in the partition of v.  The slots and links of the 
+	 * partition are held in memory while it is matched, and the links are written back after.
+	 */
+	private void findSpecial() throws IOException
+	{
+		final int n 			= graph.getNumberOfVertices();
+		final long[] offsets	= graph.getOffsets();
+		final IntColumn adj	= graph.getAdj();
+		final int maxDegree		= graph.getMaxDegree();
+		
+		link = DiskGraph.column(dir, "link.bin", graph.getNumberOfPositions());
+		
+		final int[] part = DiskGraph.blocks(offsets, DiskGraph.BLOCK);
+		
+		for ( int j = 0; j < part.length - 1; j++)
+		{
+			final int lo 		= part[j];
+			final int hi 		= part[j + 1];
+			final long base		= offsets[lo];
+			final long end		= offsets[hi];
+			final int[] lists	= read(adj, base, end);
+			final int[] slots	= read(slot, base, end);
+			final int[] links	= read(link, base, end);
+			
+			Parallel.forRange(pool, n, Parallel.grain(pool, n), new Parallel.Range() {
+				public void run(int from, int to) {
+					int[] nbr = new int[maxDegree];
+					
+					for ( int u = from; u < to; u++)
+					{
+						int deg = (int)(offsets[u + 1] - offsets[u]);
+						adj.read(offsets[u], nbr, deg);
+						
+						for ( int i = lowerBound(nbr, 0, deg, Math.max(lo, u + 1)); i < deg && nbr[i] < hi; i++)
+						{
+							int v = nbr[i];
+							int vFrom	= (int)(offsets[v] - base);
+							int vEnd	= (int)(offsets[v + 1] - base);
+							
+							int common = 2;
+							int a = 0, b = vFrom;
+							while ( a < deg && b < vEnd) {
+								if ( nbr[a] < lists[b])
+									a++;
+								else if ( nbr[a] > lists[b])
+									b++;
+								else {
+									common++; a++; b++;
+								}
+							}
+							
+							long p	= offsets[u] + i;
+							int q	= Arrays.binarySearch(lists, vFrom, vEnd, u);
+							
+							int mine	= slot.get(p);
+							int their	= slots[q];
+							
+							int minSize = (int)( (float)Math.min(slotSize[mine], slotSize[their]) * threshold);
+							boolean similar = common >= minSize;
+							
+							if ( p >= base && p < end)
+								links[(int)(p - base)] = similar ? their : -(their + 1);
+							else
+								link.set(p, similar ? their : -(their + 1));
+							
+							links[q] = similar ? mine : -(mine + 1);
+						}
+					}
+				}
+			});
+			
+			for ( int x = 0; x < links.length; x++)
+				link.set(base + x, links[x]);
+		}
+	}
+	
+	
+	/**
+	 * Sweep the vertices, lowering the labels in place, until nothing changes.
+	 * 
+	 * Each vertex pulls the labels of its similar neighbors into its own slots, so a label is 
+	 * only written by the thread running its vertex.  A neighbor's label read during a sweep is 
+	 * its old or its new value, and a vertex that lowers a label marks its neighbors to run 
+	 * again in the next sweep, so the sweeps stop at the same labels as in order.
+	 */
+	private void propagate()
+	{
+		final int n 			= graph.getNumberOfVertices();
+		final long[] offsets	= graph.getOffsets();
+		final IntColumn adj		= graph.getAdj();
+		
+		boolean[] active 		= new boolean[n];
+		boolean[] nextActive	= new boolean[n];
+		Arrays.fill(active, true);
+		
+		final AtomicInteger count	= new AtomicInteger();
+		final AtomicInteger lowered	= new AtomicInteger();
+		
+		do
+		{
+			++iterationCount;
+			count.set(0);
+			lowered.set(0);
+			
+			final boolean[] in	= active;
+			final boolean[] out	= nextActive;
+			
+			Parallel.forRange(pool, n, Parallel.grain(pool, n), new Parallel.Range() {
+				public void run(int from, int to) {
+					int ran = 0, low = 0;
+					
+					for ( int u = from; u < to; u++)
+					{
+						if ( ! in[u])
+							continue;
+						
+						ran++;
+						boolean mine = false;
+						
+						for ( long p = offsets[u]; p < offsets[u + 1]; p++)
+						{
+							int t = link.get(p);
+							
+							if ( t >= 0) {
+								int s = slot.get(p);
+								
+								if ( labels[t] < labels[s]) {
+									labels[s] = labels[t];
+									mine = true;
+								}
+							}
+						}
+						
+						if ( ! mine)
+							continue;
+						
+						low++;
+						
+						for ( long p = offsets[u]; p < offsets[u + 1]; p++) {
+							if ( link.get(p) >= 0)
+								out[adj.get(p)] = true;
+						}
+					}
+					
+					count.addAndGet(ran);
+					lowered.addAndGet(low);
+				}
+			});
+			
+			Arrays.fill(in, false);
+			active		= out;
+			nextActive	= in;
+			
+			if ( verbose)
+				System.out.println("\tDone Sweep " + iterationCount + "  Vertices = " + count.get());
+		}
+		while ( lowered.get() > 0);
+	}
+	
+	
+	/**
+	 * Emit the (label, vertex, other member) entries of every vertex for the collector.  The
+	 * vertices go in descending index order, the order of the driver's vertex table.
+	 * 
+	 * @param collector
+	 * @throws IOException
+	 */
+	public void collect(ParallelCollector collector) throws IOException
+	{
+		final int n 			= graph.getNumberOfVertices();
+		final long[] offsets	= graph.getOffsets();
+		final IntColumn adj		= graph.getAdj();
+		
+		// the ego-communities and the special neighbors of each vertex
+		final int[] count = new int[n];
+		
+		Parallel.forRange(pool, n, Parallel.grain(pool, n), new Parallel.Range() {
+			public void run(int from, int to) {
+				for ( int u = from; u < to; u++) {
+					count[u] = slotOffsets[u + 1] - slotOffsets[u];
+					
+					for ( long p = offsets[u]; p < offsets[u + 1]; p++) {
+						if ( link.get(p) < 0)
+							count[u]++;
+					}
+				}
+			}
+		});
+		
+		final int[] at = new int[n];
+		long total = 0;
+		
+		for ( int u = n - 1; u >= 0; u--) {
+			at[u] = (int)total;
+			total += count[u];
+		}
+		
+		if ( total > Integer.MAX_VALUE - 8)
+			throw new IOException("too many entries to collect: " + total);
+		
+		final int[] key		= new int[(int)total];
+		final int[] vertex	= new int[(int)total];
+		final int[] other	= new int[(int)total];
+		
+		Parallel.forRange(pool, n, Parallel.grain(pool, n), new Parallel.Range() {
+			public void run(int from, int to) {
+				for ( int u = from; u < to; u++)
+				{
+					int vertexID = graph.getId(u);
+					int e = at[u];
+					
+					for ( int s = slotOffsets[u]; s < slotOffsets[u + 1]; s++)
+					{
+						int o = ParallelCollector.NONE;
+						
+						if ( slotSize[s] == 2) {
+							for ( long p = offsets[u]; p < offsets[u + 1]; p++) {
+								if ( slot.get(p) == s)
+									o = graph.getId(adj.get(p));
+							}
+						}
+						
+						key[e] 		= Float.floatToIntBits(labels[s]);
+						vertex[e]	= vertexID;
+						other[e]	= o;
+						e++;
+					}
+					
+					// the special neighbors join the community of the neighbor's ego-community
+					for ( long p = offsets[u]; p < offsets[u + 1]; p++)
+					{
+						int t = link.get(p);
+						
+						if ( t < 0) {
+							key[e]		= Float.floatToIntBits(labels[-(t + 1)]);
+							vertex[e]	= vertexID;
+							other[e]	= ParallelCollector.NONE;
+							e++;
+						}
+					}
+				}
+			}
+		});
+		
+		collector.collect(key, vertex, other);
+	}
+	
+	
+	public int getIterationCount()
+	{
+		return iterationCount;
+	}
+	
+	
+	public void shutdown() throws IOException
+	{
+		pool.shutdown();
+		slot.close();
+		link.close();
+	}
+	
+	
+	/**
+	 * Read the positions [from, to) of a column into memory
+	 */
+	private static int[] read(IntColumn column, long from, long to)
+	{
+		int[] a = new int[(int)(to - from)];
+		column.read(from, a, a.length);
+		return a;
+	}
+	
+	
+	/**
+	 * The first place in the sorted range that is not below the value
+	 */
+	private static int lowerBound(int[] a, int from, int to, int value)
+	{
+		int x = Arrays.binarySearch(a, from, to, value);
+		return ( x >= 0) ? x : -x - 1;
+	}
+	
+	
+	private static int find(int[] parent, int x)
+	{
+		while ( parent[x] != x) {
+			parent[x] = parent[parent[x]];
+			x = parent[x];
+		}
+		return x;
+	}
+	
+	
+	private static void union(int[] parent, int a, int b)
+	{
+		int ra = find(parent, a);
+		int rb = find(parent, b);
+		
+		if ( ra < rb)
+			parent[rb] = ra;
+		else if ( rb < ra)
+			parent[ra] = rb;
+	}
+}
@@ -0,0 +1,292 @@
+/*
+ * 
+ * Copyright 2014 Bradley S. Rees
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License. 
+ *  
+ */
+package edu.fit.brees.ego.graph;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+
+
+/**
+ * The network held as sorted adjacency arrays (compressed sparse rows).
+ * 
+ * Vertices are given a dense index (0 .. n-1) in order of their ID, or in a VertexOrdering that
+ * keeps neighbors close together.  The neighbors of vertex u are adj[offsets[u]] .. adj[offsets[u+1]-1], 
+ * sorted by index.  An entry of adj is called a 
+ * position, each undirected edge has two positions:  (u,v) and its reverse (v,u).
+ * 
+ * Self loops are not kept since they are never part of an ego-net.
+ * 
+ * @author bradrees
+ *
+ */
+public class CompactGraph
+{
+	private int		numberOfVertices	= 0;
+	private int[]	ids					= null;		// dense index -> vertex ID
+	private int[]	offsets				= null;		// adjacency range of each vertex
+	private int[]	adj					= null;		// neighbor dense index, sorted per vertex
+	private int[]	reverse				= null;		// position of (v,u) for the position (u,v)
+	
+	// lookup of the index of an ID
+	private int[]	sortedIds			= null;		// the IDs in order
+	private int[]	indexOfSorted		= null;		// the index of each sorted ID, null if in ID order
+	
+	
+	/**
+	 * Build from the EgoVertex neighbor lists
+	 * 
+	 * @param vertices
+	 * @return
+	 */
+	public static CompactGraph build(Collection<EgoVertex> vertices, String ordering)
+	{
+		CompactGraph g = build(vertices);
+		
+		if ( ordering == null )
+			return g;
+		
+		return g.reorder(VertexOrdering.order(g, ordering));
+	}
+	
+	
+	/**
+	 * Build from the EgoVertex neighbor lists, the vertices are in order of ID
+	 * 
+	 * @param vertices
+	 * @return
+	 */
+	public static CompactGraph build(Collection<EgoVertex> vertices)
+	{
+		CompactGraph g = new CompactGraph();
+		
+		int n = vertices.size();
+		g.numberOfVertices = n;
+		
+		// order the vertices by ID
+		EgoVertex[] byIndex = vertices.toArray(new EgoVertex[n]);
+		g.ids = new int[n];
+		
+		for ( int x = 0; x < n; x++)
+			g.ids[x] = byIndex[x].getId();
+		Arrays.sort(g.ids);
+		g.sortedIds = g.ids;
+		
+		HashMap<Integer, Integer> denseOf = new HashMap<>(n * 2);
+		for ( int x = 0; x < n; x++)
+			denseOf.put(g.ids[x], x);
+		
+		for ( EgoVertex v : vertices)
+			byIndex[denseOf.get(v.getId())] = v;
+		
+		// adjacency
+		g.offsets = new int[n + 1];
+		
+		for ( int x = 0; x < n; x++) {
+			EgoVertex v = byIndex[x];
+			int degree = v.getNeighborCount();
+			
+			for ( EgoVertex friend : v.getNeighbors()) {
+				if ( friend.getId() == v.getId())
+					degree--;
+			}
+			
+			g.offsets[x + 1] = g.offsets[x] + degree;
+		}
+		
+		g.adj = new int[g.offsets[n]];
+		
+		for ( int x = 0; x < n; x++) {
+			EgoVertex v = byIndex[x];
+			int p = g.offsets[x];
+			
+			for ( EgoVertex friend : v.getNeighbors()) {
+				if ( friend.getId() != v.getId())
+					g.adj[p++] = denseOf.get(friend.getId());
+			}
+			
+			Arrays.sort(g.adj, g.offsets[x], g.offsets[x + 1]);
+		}
+		
+		g.buildReverse();
+		return g;
+	}
+	
+	
+	/**
+	 * Relabel the vertices
+	 * 
+	 * @param order	- the current indexes in the new order
+	 * @return a new graph with vertex order[x] at index x
+	 */
+	public CompactGraph reorder(int[] order)
+	{
+		int n = numberOfVertices;
+		
+		int[] newIndex = new int[n];
+		for ( int x = 0; x < n; x++)
+			newIndex[order[x]] = x;
+		
+		CompactGraph g = new CompactGraph();
+		g.numberOfVertices	= n;
+		g.ids				= new int[n];
+		g.offsets			= new int[n + 1];
+		g.adj				= new int[adj.length];
+		g.sortedIds			= sortedIds;
+		g.indexOfSorted		= new int[n];
+		
+		for ( int x = 0; x < n; x++) {
+			int u = order[x];
+			g.ids[x] = ids[u];
+			g.offsets[x + 1] = g.offsets[x] + degree(u);
+			
+			int p = g.offsets[x];
+			for ( int q = offsets[u]; q < offsets[u + 1]; q++)
+				g.adj[p++] = newIndex[adj[q]];
+			
+			Arrays.sort(g.adj, g.offsets[x], g.offsets[x + 1]);
+		}
+		
+		for ( int k = 0; k < n; k++) {
+			int old = ( indexOfSorted == null) ? k : indexOfSorted[k];
+			g.indexOfSorted[k] = newIndex[old];
+		}
+		
+		g.buildReverse();
+		return g;
+	}
+	
+	
+	/**
+	 * 
+	 * @param k
+	 * @return the index of the k-th smallest ID
+	 */
+	public int indexInIdOrder(int k)
+	{
+		return ( indexOfSorted == null) ? k : indexOfSorted[k];
+	}
+	
+	
+	/**
+	 * Find the reverse of every position
+	 */
+	private void buildReverse()
+	{
+		reverse = new int[adj.length];
+		
+		for ( int x = 0; x < numberOfVertices; x++) {
+			for ( int p = offsets[x]; p < offsets[x + 1]; p++)
+				reverse[p] = position(adj[p], x);
+		}
+	}
+	
+	
+	/**
+	 * The dense index of a vertex ID
+	 * 
+	 * @param id
+	 * @return - the index or a negative number if not found
+	 */
+	public int indexOf(int id)
+	{
+		int k = Arrays.binarySearch(sortedIds, id);
+		
+		if ( k < 0 || indexOfSorted == null)
+			return k;
+		
+		return indexOfSorted[k];
+	}
+	
+	
+	/**
+	 * The position of v in the neighbors of u
+	 * 
+	 * @param u
+	 * @param v
+	 * @return - the position or a negative number if they are not neighbors
+	 */
+	public int position(int u, int v)
+	{
+		return Arrays.binarySearch(adj, offsets[u], offsets[u + 1], v);
+	}
+	
+	
+	/**
+	 * Number of vertices adjacent to both u and v
+	 * 
+	 * @param u
+	 * @param v
+	 * @return
+	 */
+	public int commonNeighbors(int u, int v)
+	{
+		int a 		= offsets[u];
+		int aEnd 	= offsets[u + 1];
+		int b 		= offsets[v];
+		int bEnd 	= offsets[v + 1];
+		int count 	= 0;
+		
+		while ( a < aEnd && b < bEnd) {
+			if ( adj[a] < adj[b])
+				a++;
+			else if ( adj[a] > adj[b])
+				b++;
+			else {
+				count++;
+				a++;
+				b++;
+			}
+		}
+		
+		return count;
+	}
+	
+	
+	public int degree(int u) {
+		return offsets[u + 1] - offsets[u];
+	}
+	
+	public int getNumberOfVertices() {
+		return numberOfVertices;
+	}
+	
+	public int getNumberOfPositions() {
+		return adj.length;
+	}
+	
+	public int getId(int v) {
+		return ids[v];
+	}
+	
+	public int[] getIds() {
+		return ids;
+	}
+	
+	public int[] getOffsets() {
+		return offsets;
+	}
+	
+	public int[] getAdj() {
+		return adj;
+	}
+	
+	public int[] getReverse() {
+		return reverse;
+	}
+}
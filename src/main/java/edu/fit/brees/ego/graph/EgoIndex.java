@@ -0,0 +1,227 @@
+/*
+ * 
+ * Copyright 2014 Bradley S. Rees
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License. 
+ *  
+ */
+package edu.fit.brees.ego.graph;
+
+import java.util.Collection;
+import java.util.HashMap;
+
+import edu.fit.brees.ego.community.EgoCommunity;
+
+
+/**
+ * A flat, threshold independent snapshot of the extracted ego-communities.
+ *
+ * The graph is held as a CompactGraph.  Every ego-community is given a slot, the slots of a 
+ * vertex are contiguous.  For every adjacency position (u,v) the index records the slot of u's 
+ * ego-community that contains v and the size of the intersection between that ego-community 
+ * and v's ego-community containing u.
+ *
+ * Since the intersection does not depend on the overlap threshold, it is computed once and
+ * the special (non-propagating) decision for any threshold is just a comparison.
+ *
+ * @author bradrees
+ *
+ */
+public class EgoIndex
+{
+	// the graph
+	private CompactGraph	graph				= null;
+	private int				numberOfVertices	= 0;
+	private int[]			offsets				= null;
+	private int[]			adj					= null;
+	private int[]			reverse				= null;
+
+	// the ego-communities
+	private int[]	slotOffsets			= null;		// slot range of each vertex
+	private float[]	slotLabel			= null;		// the initial ego-community ID
+	private int[]	slotSize			= null;		// number of members, including the ego-vertex
+	private int[]	edgeSlot			= null;		// slot of u's ego-community containing v
+	private int[]	overlap				= null;		// intersection size of the two views of the edge
+
+
+
+	/**
+	 * Build the index from vertices that have already extracted their ego-communities
+	 *
+	 * @param vertices
+	 * @return
+	 */
+	public static EgoIndex build(Collection<EgoVertex> vertices)
+	{
+		return build(CompactGraph.build(vertices), vertices);
+	}
+	
+	
+	/**
+	 * Build the index on an existing CompactGraph of the vertices
+	 *
+	 * @param graph
+	 * @param vertices
+	 * @return
+	 */
+	public static EgoIndex build(CompactGraph graph, Collection<EgoVertex> vertices)
+	{
+		EgoIndex index = new EgoIndex();
+
+		int n = graph.getNumberOfVertices();
+		
+		index.graph				= graph;
+		index.numberOfVertices	= n;
+		index.offsets			= graph.getOffsets();
+		index.adj				= graph.getAdj();
+		index.reverse			= graph.getReverse();
+		
+		EgoVertex[] byIndex = new EgoVertex[n];
+		for ( EgoVertex v : vertices)
+			byIndex[graph.indexOf(v.getId())] = v;
+
+		// slot ranges
+		index.slotOffsets = new int[n + 1];
+
+		for ( int x = 0; x < n; x++)
+			index.slotOffsets[x + 1] = index.slotOffsets[x] + byIndex[x].getAllEgoCommunity().size();
+
+		int slots = index.slotOffsets[n];
+
+		index.edgeSlot	= new int[index.adj.length];
+		index.overlap	= new int[index.adj.length];
+		index.slotLabel	= new float[slots];
+		index.slotSize	= new int[slots];
+
+		HashMap<Integer, Integer> slotOf = new HashMap<>();
+
+		for ( int x = 0; x < n; x++)
+		{
+			// record the ego-communities and which one holds each neighbor
+			slotOf.clear();
+			int slot = index.slotOffsets[x];
+
+			for ( EgoCommunity ec : byIndex[x].getAllEgoCommunity()) {
+				index.slotLabel[slot] 	= ec.getId();
+				index.slotSize[slot]	= ec.size();
+
+				for ( Integer m : ec.getMembers())
+					slotOf.put(m, slot);
+
+				slot++;
+			}
+
+			for ( int p = index.offsets[x]; p < index.offsets[x + 1]; p++)
+				index.edgeSlot[p] = slotOf.get(graph.getId(index.adj[p]));
+		}
+
+		return index;
+	}
+
+
+	/**
+	 * Compute the overlap for the vertices in the range [from, to).  Each undirected edge is
+	 * computed once by its lower endpoint, so ranges can be run in parallel.
+	 *
+	 * Both views of an edge (u,v) contain u, v and every common neighbor of u and v, since a
+	 * common neighbor is adjacent to v in u's ego-net (and to u in v's).  Nothing else can be in
+	 * both, so the intersection is a sorted merge of the adjacency lists plus the two endpoints.
+	 *
+	 * @param from
+	 * @param to
+	 */
+	public void computeOverlap(int from, int to)
+	{
+		for ( int u = from; u < to; u++)
+		{
+			for ( int p = offsets[u]; p < offsets[u + 1]; p++)
+			{
+				int v = adj[p];
+
+				if ( v > u ) {
+					int common = 2 + graph.commonNeighbors(u, v);
+					overlap[p] 			= common;
+					overlap[reverse[p]]	= common;
+				}
+			}
+		}
+	}
+
+
+	/**
+	 * Are the two views of the edge at position p similar at the given threshold?
+	 * This is the same test as SetUtil.egoSimalarity
+	 *
+	 * @param p
+	 * @param threshold
+	 * @return T/F - false means the neighbor is special
+	 */
+	public boolean isSimilar(int p, float threshold)
+	{
+		int a = slotSize[edgeSlot[p]];
+		int b = slotSize[edgeSlot[reverse[p]]];
+
+		int minSize = (int)( (float)Math.min(a, b) * threshold);
+
+		return overlap[p] >= minSize;
+	}
+
+
+	public CompactGraph getGraph() {
+		return graph;
+	}
+
+	public int getNumberOfVertices() {
+		return numberOfVertices;
+	}
+
+	public int getNumberOfSlots() {
+		return slotOffsets[numberOfVertices];
+	}
+
+	public int getId(int v) {
+		return graph.getId(v);
+	}
+
+	public int[] getOffsets() {
+		return offsets;
+	}
+
+	public int[] getAdj() {
+		return adj;
+	}
+
+	public int[] getReverse() {
+		return reverse;
+	}
+
+	public int[] getSlotOffsets() {
+		return slotOffsets;
+	}
+
+	public float[] getSlotLabel() {
+		return slotLabel;
+	}
+
+	public int[] getSlotSize() {
+		return slotSize;
+	}
+
+	public int[] getEdgeSlot() {
+		return edgeSlot;
+	}
+
+	public int[] getOverlap() {
+		return overlap;
+	}
+}
@@ -19,10 +19,13 @@ package edu.fit.brees.ego.graph;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Hashtable;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import edu.fit.brees.ego.community.EgoCommunity;
 import edu.fit.brees.ego.jung.JungNetwork;
@@ -44,8 +47,9 @@ import edu.fit.brees.ego.util.ExtractEgoCommunities;
 public class EgoVertex implements Callable<Integer>
 {
 
-	// Name
-	private String	name		= "unset";
+	// Name - the label in a shared LabelTable, or made from the ID if there is none
+	private LabelTable	labels		= null;
+	private int			label		= -1;
 
 	// base ID
 	private int		myId			= -99;		// a negative indicated unset
@@ -53,6 +57,9 @@ public class EgoVertex implements Callable<Integer>
 	// Ego-Communities
 	private ArrayList<EgoCommunity> egoCommunities		= null;
 	
+	// the Ego-Community holding each neighbor
+	private Map<Integer, EgoCommunity> egoOf			= null;
+	
 	// Non-propagating Vertices
 	// called special since those vertices are treated differently
 	private Map<Integer, EgoCommunity> special		= null;
@@ -74,28 +81,42 @@ public class EgoVertex implements Callable<Integer>
 	
 	
 	//--- status flags ----
-	protected boolean	idChanged						= false;			// a ego-community ID has changed
+	protected final AtomicBoolean	idChanged				= new AtomicBoolean(false);	// a ego-community ID has changed
 	protected boolean	egoCommunitiesFoundCompleted	= false;			// have the ego-communities been found
 	protected boolean	findSpecialCompleted			= false;			// have special vertices been found
 
 	// Possible processing operations
 	public static final int NOOP	= 0;
-	public static final int WAIT	= 1;
 	public static final int RAN		= 2;
 	
 	
 	
 	
 	/**
+	 * A vertex named by its ID
 	 * 
-	 * @param agentName
-	 * @param agentID
-	 * @param clusterType
-	 * @param swarmStatus
+	 * @param vertexID
+	 * @param threshold
+	 * @param status
 	 */
-	public EgoVertex(String vertexName, int vertexID, float threshold, ProcessingStatus status)
+	public EgoVertex(int vertexID, float threshold, ProcessingStatus status)
 	{
-		this.name 				= vertexName;
+		this(null, -1, vertexID, threshold, status);
+	}
+	
+	
+	/**
+	 * 
+	 * @param labels	- the shared labels
+	 * @param label		- the index of this vertex's label
+	 * @param vertexID
+	 * @param threshold
+	 * @param status
+	 */
+	public EgoVertex(LabelTable labels, int label, int vertexID, float threshold, ProcessingStatus status)
+	{
+		this.labels				= labels;
+		this.label				= label;
 		this.myId 				= vertexID;
 		this.threshold			= threshold;
 		this.processingStatus	= status;
@@ -103,72 +124,75 @@ public class EgoVertex implements Callable<Integer>
 		special				= new Hashtable<Integer, EgoCommunity> ();
 		neighbors 			= new Hashtable<Integer, EgoVertex>();
 		egoCommunities		= new ArrayList<EgoCommunity>();
+		egoOf				= new HashMap<Integer, EgoCommunity>();
 		
 		// since this is all new, there is no change
-		idChanged = false;
+		idChanged.set(false);
 	}
 	
 	
 	/**
 	 * 
-	 * This is the main processing method.  It steps through each phase based on the state of the 
-	 * EgoVertex and independent of the other EgoVertex(es).  This method is repeatedly called until 
-	 * there is no processing left to be done
+	 * This is the main processing method.  The phases are run by the engine as complete passes 
+	 * over all the EgoVertex(es), each pass finishes before the next one starts:
+	 * 
+	 *   Phase 1 - buildEgoCommunities		find the ego-communities
+	 *   Phase 2 - determineSpecialNodes	find the vertices that do not propagate (called special)
+	 *   Phase 3 - execute					propagate the information
 	 * 
-	 * @return - status (NOOP | RAN | WAIT)
+	 * Phase 3 is run each time one of the ego-community IDs changes
+	 * 
+	 * @return - status (NOOP | RAN)
 	 */
 	public int execute()
 	{
-		//------- Phase 1 -----------
-		// The first thing that needs to be done is to find all the ego-communities
-		// see if the ego-communities need to be found
-		//
-		if (egoCommunitiesFoundCompleted == false)
-		{
-			extractEgoCommunities();
-			egoCommunitiesFoundCompleted = true;
-			idChanged = true;
-		
-			return EgoVertex.RAN;
-		}
-		
-		
-		//------- Phase 2 -----------
-		// find the vertices that are different (do not propagate - called special)
-		if ( findSpecialCompleted == false)
-		{
-			// make sure that all the neighbors are ready to be evaluated
-			if ( checkNeighborStatus() == false ) {
-				return EgoVertex.WAIT;
-			}
-			
-			determineSpecialNodes();
-			findSpecialCompleted = true;
-			
-			return EgoVertex.RAN;
-		}
-	
-		
 		//------- Phase 3 -----------
 		// Propagate the information
 		// This section is run multiple times
 		
 		// Has an ID within this EgoVertex changed?
-		if ( idChanged )
+		if ( idChanged.get() )
 		{
 			pushIdChange();
 			return EgoVertex.RAN;
 		}
 		
-		// nothing needed to be done.  
-		processingStatus.incDoneCount();
-		
-		return EgoVertex.NOOP;		// starting state;
+		return EgoVertex.NOOP;
 	}
 	
 	
 	
 
+	/**
+	 * Phase 1 by itself - find the ego-communities of this vertex
+	 */
+	public void buildEgoCommunities()
+	{
+		extractEgoCommunities();
+	}
+	
+	
+	/**
+	 * Phase 1 when the ego-communities were found by the engine 
+	 * 
+	 * @param ecList
+	 */
+	public void setEgoCommunities(ArrayList<EgoCommunity> ecList)
+	{
+		egoCommunities = ecList;
+		
+		egoOf.clear();
+		for ( EgoCommunity ec : egoCommunities) {
+			for ( Integer m : ec.getMembers())
+				egoOf.put(m, ec);
+		}
+		egoOf.remove(this.myId);
+		
+		egoCommunitiesFoundCompleted = true;
+		idChanged.set(true);
+	}
+	
+	
 	/**
 	 * This process is done using JUNG (should be updated)
 	 * 
@@ -180,7 +204,7 @@ public class EgoVertex implements Callable<Integer>
 		{
 			// get the ego-communities
 			//ExtractEgoCommunities extractor = new ExtractEgoCommunities();
-			egoCommunities = ExtractEgoCommunities.extract(this);
+			setEgoCommunities(ExtractEgoCommunities.extract(this));
 		} 
 		catch (Exception e)
 		{
@@ -192,74 +216,94 @@ public class EgoVertex implements Callable<Integer>
 	
 	
 	/**
-	 * Step through all the identified EgoCommunities (EC) and ask each node for their 
+	 * Step through all the identified EgoCommunities (EC) and get the neighbor's  
 	 * Corresponding EC.  Compare the two set to determine if they represent the same group.  
 	 * If not, mark that node as "special" (that means that the ID changes are not propagated out)
 	 * 
+	 * The comparison is symmetric, the neighbor would compare the same two sets, so only the  
+	 * neighbors with a larger ID are compared and the decision is recorded on both ends.
+	 * Every EgoVertex must have completed phase 1 before this is called.
+	 * 
 	 * Since a node can only appear in one FG at this time, there is no need to 
 	 * map nodes back to ECs
 	 * 
 	 */
-	private void determineSpecialNodes()
+	public void determineSpecialNodes()
 	{
 		
 		//System.out.println("Determine Special for " + this.myId);
 		
-		// look at each EgoCommunity 
-		for ( EgoCommunity ecSet : egoCommunities)
+		// look at each neighbor 
+		for ( Integer nodeId : egoOf.keySet())
 		{
-			HashSet<Integer> myView = ecSet.getMembers();		// all members of the ego-community
-			
-			for ( Integer nodeId : myView)						// steps through each member
-			{
-				if ( nodeId != this.myId)	// don't compare against myself
-				{
-					// convert from an ID to the EgoVertex
-					EgoVertex agent = neighbors.get(nodeId.intValue());
-
-					// get their view of the EgoCommunity
-					HashSet<Integer> theirViewOfEC = agent.getEgoCommunity(this.myId);
-
-					// are the views similar?
-					boolean similar = SetUtil.egoSimalarity(myView, theirViewOfEC, threshold);
-
-					if ( similar == false)
-					{
-						// this is a special node
-						EgoCommunity spec = new EgoCommunity();
-						spec.addToList(nodeId);
-						spec.setId(ecSet.getId());
-
-						special.put(nodeId.intValue(), spec);
-
-						//System.out.println("\t----- Added " + nodeId + " as special  -- value was " + dif);
-						//System.out.println("Set A: " + nodeSet + "  and Set B: " + theirViewOfFG);
-					}
-				}
-			}
+			if ( nodeId > this.myId)	// the other half of the edges are done by the neighbor
+				checkSpecial(nodeId);
 		}
+		
+		findSpecialCompleted = true;
 	}
 	
 	
 	/**
-	 * make sure that all neighbors are ready
+	 * Compare the two views of the edge to a neighbor and record the decision on both ends
 	 * 
-	 * @return
+	 * @param nodeId
 	 */
-	private boolean checkNeighborStatus()
+	public void checkSpecial(Integer nodeId)
 	{
-		// get the list of neighbors
-		Collection<EgoVertex> agents = neighbors.values();
+		// my view of the EgoCommunity
+		EgoCommunity ecSet = egoOf.get(nodeId);
 		
-		for ( EgoVertex agent : agents )
+		// convert from an ID to the EgoVertex
+		EgoVertex agent = neighbors.get(nodeId.intValue());
+		
+		// with two or fewer neighbors the ego-community holding the neighbor is just the 
+		// two ends and their common neighbors, which is all of the overlap, so it is never special
+		if ( threshold <= 1.0f && ( neighbors.size() <= 2 || agent.getNeighborCount() <= 2) )
+			return;
+
+		// get their view of the EgoCommunity
+		EgoCommunity theirEC = agent.findEgo(this.myId);
+
+		// are the views similar?
+		boolean similar = SetUtil.egoSimalarity(ecSet.getMembers(), theirEC.getMembers(), threshold);
+
+		if ( similar == false)
 		{
-			if (agent.isBuildEcCompleted() == false)
-				return false;
+			// this is a special node, both ways.  Each side starts with the ID of the
+			// other side's EgoCommunity, which can then only go down as it is pushed
+			this.addSpecial(nodeId, theirEC.getId());
+			agent.addSpecial(this.myId, ecSet.getId());
+
+			//System.out.println("\t----- Added " + nodeId + " as special  -- value was " + dif);
 		}
-		
-		return true;
 	}
+	
+	
+	/**
+	 * Mark phase 2 as done when the neighbors were checked by the engine
+	 */
+	public void setSpecialCompleted()
+	{
+		findSpecialCompleted = true;
+	}
+	
+	
+	/**
+	 * Record that the neighbor is special, the ID is the one of the neighbor's
+	 * EgoCommunity holding this vertex
+	 * 
+	 * @param nodeId
+	 * @param id
+	 */
+	public void addSpecial(int nodeId, float id)
+	{
+		EgoCommunity spec = new EgoCommunity();
+		spec.addToList(nodeId);
+		spec.setId(id);
 
+		special.put(nodeId, spec);
+	}
 	
 	
 	/**
@@ -269,45 +313,75 @@ public class EgoVertex implements Callable<Integer>
 	 */
 	public void pushIdChange()
 	{
-		synchronized(this) {
-			this.idChanged = false;
+		// step through all the friendship-groups that changed
+		for ( EgoCommunity ec : takeChangedEgoCommunities() )
+		{
+			// get the new EgoCiommunity ID
+			float index = ec.getId();								 
+			
+			// Get a list of all the member of this EgoCommunity
+			HashSet<Integer> members = ec.getMembers();
+				
+			// step through all members
+			for ( int idx : members )
+			{
+				if ( idx != myId )	// don't tell ourselves
+					notifyMember(idx, index);
+			}
 		}
+	}
+	
+	
+	/**
+	 * Return the EgoCommunities whose ID has changed and mark them as unchanged.  
+	 * 
+	 * The mailboxes are drained first, so each EgoCommunity takes only the smallest ID 
+	 * proposed since the last activation.  They are marked unchanged before the ID is read, 
+	 * so that a change made by a neighbor while pushing is not lost
+	 * 
+	 * @return
+	 */
+	public List<EgoCommunity> takeChangedEgoCommunities()
+	{
+		idChanged.set(false);
+		
+		List<EgoCommunity> changed = new ArrayList<>();
 		
-		// step through all the friendship-groups
 		for ( EgoCommunity ec : egoCommunities)
 		{
+			ec.drainProposal();
+			
 			// only care if the ID has changed
 			if ( ec.isChanged() )
 			{
-				// get the new EgoCiommunity ID
-				float index = ec.getId();								 
-				
-				// Get a list of all the member of this EgoCommunity
-				HashSet<Integer> members = ec.getMembers();
-					
-				// step through all members
-				for ( int idx : members )
-				{
-					if ( idx != myId )	// don't tell ourselves
-					{
-						// find the agent
-						EgoVertex agent  = this.neighbors.get( idx );
-
-						if ( agent != null)
-						{
-							agent.notifyGroupIdChange( this.myId, index);
-						}
-						else
-						{
-							System.out.println("\tERROR: On Agent (" + this.myId + ")   the agent id " + idx + " is NULL");
-						}
-					}
-				}
-			
-				// mark this EgoCommunity has unchanged 
 				ec.setChanged(false);
+				changed.add(ec);
 			}
 		}
+		
+		return changed;
+	}
+	
+	
+	/**
+	 * Tell one member of an EgoCommunity about the ID
+	 * 
+	 * @param idx
+	 * @param index
+	 */
+	public void notifyMember(int idx, float index)
+	{
+		// find the agent
+		EgoVertex agent  = this.neighbors.get( idx );
+
+		if ( agent != null)
+		{
+			agent.notifyGroupIdChange( this.myId, index);
+		}
+		else
+		{
+			System.out.println("\tERROR: On Agent (" + this.myId + ")   the agent id " + idx + " is NULL");
+		}
 	}
 	
 	
@@ -330,8 +404,8 @@ public class EgoVertex implements Callable<Integer>
 		
 		if ( specialSet != null )
 		{			
-			specialSet.setId(newGroupId);
-			specialSet.setChanged(false);
+			// IDs only go down, so keep the smallest one seen
+			specialSet.lowerId(newGroupId);
 			//System.out.println("\t\tNode " + callersID + " is special to " + this.myId);
 		}
 		else
@@ -339,15 +413,18 @@ public class EgoVertex implements Callable<Integer>
 			// Find the group containing the caller
 			EgoCommunity ec = findEgo(callersID);
 			
-			if ( ec != null ) {
-				// We only care if the new ID is smaller than the current
-				if ( newGroupId < ec.getId() )
-				{
-					ec.setId(newGroupId);
-					ec.setChanged(true);
-					this.idChanged = true;
-					processingStatus.resetDonCount();
-				}	
+			if ( ec != null && ec.size() == 2) {
+				// the caller is the only other member, so the new ID never needs to be 
+				// pushed back.  Take it now without scheduling this vertex again
+				ec.lowerId(newGroupId);
+			}
+			else if ( ec != null ) {
+				// We only care if the new ID is smaller than the current and than 
+				// anything already in the mailbox.  The mailbox is drained when this 
+				// vertex next runs, the proposal is left before the flag is set so 
+				// a drain that clears the flag either sees it or leaves the flag set
+				if ( ec.proposeId(newGroupId) )
+					markIdChanged();
 			}
 			
 			
@@ -375,6 +452,17 @@ public class EgoVertex implements Callable<Integer>
 	
 	
 	
+	/**
+	 * Flag that an EgoCommunity ID has changed.  The first change since the last push 
+	 * adds this EgoVertex to the set of vertices to run in the next iteration
+	 */
+	private void markIdChanged()
+	{
+		if ( idChanged.compareAndSet(false, true) )
+			processingStatus.addChanged(this);
+	}
+	
+	
 	/**
 	 * has an EgoCommunity ID changed?
 	 * 
@@ -382,7 +470,7 @@ public class EgoVertex implements Callable<Integer>
 	 */
 	public boolean hasAnyEgoChanged()
 	{
-		return idChanged;
+		return idChanged.get();
 	}
 
 
@@ -412,6 +500,12 @@ public class EgoVertex implements Callable<Integer>
 	}
 	
 	
+	public boolean isNeighbor(int id)
+	{
+		return neighbors.containsKey(id);
+	}
+	
+	
 	public Collection<EgoVertex> getNeighbors()
 	{
 		return this.neighbors.values();
@@ -427,11 +521,10 @@ public class EgoVertex implements Callable<Integer>
 	 */
 	public HashSet<Integer> getEgoCommunity(Integer id)
 	{
-		for (EgoCommunity ec : egoCommunities)
-		{
-			if ( ec.conatins(id) )
-				return ec.getMembers();
-		}
+		EgoCommunity ec = findEgo(id);
+		
+		if ( ec != null )
+			return ec.getMembers();
 		
 		return null;
 	}
@@ -444,13 +537,7 @@ public class EgoVertex implements Callable<Integer>
 	 */
 	public EgoCommunity findEgo(Integer id)
 	{
-		for (EgoCommunity ec : egoCommunities)
-		{
-			if ( ec.conatins(id) )
-				return ec;
-		}
-		
-		return null;
+		return egoOf.get(id);
 	}
 		
 	
@@ -468,7 +555,10 @@ public class EgoVertex implements Callable<Integer>
 
 	public String getName()
 	{
-		return name;
+		if ( labels == null )
+			return "ID: " + myId;
+		
+		return labels.get(label);
 	}
 
 
@@ -552,7 +642,7 @@ public class EgoVertex implements Callable<Integer>
 
 
 	public void setIdChanged(boolean idChanged) {
-		this.idChanged = idChanged;
+		this.idChanged.set(idChanged);
 		
 		for ( EgoCommunity ec :  egoCommunities	)
 			ec.setChanged(idChanged);
@@ -568,6 +658,11 @@ public class EgoVertex implements Callable<Integer>
 	public void setTmpCommunities(Hashtable<Float, HashSet<Integer>> tmpCommunities) {
 		this.tmpCommunities = tmpCommunities;
 	}
+
+
+	public void setProcessingStatus(ProcessingStatus processingStatus) {
+		this.processingStatus = processingStatus;
+	}
 	
 	
 }
@@ -0,0 +1,73 @@
+/*
+ * 
+ * Copyright 2014 Bradley S. Rees
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License. 
+ *  
+ */
+package edu.fit.brees.ego.graph;
+
+import java.util.Arrays;
+
+
+/**
+ * The labels of the vertices packed into one character buffer.  Label x is the characters
+ * from offsets[x] up to offsets[x+1], so a label costs its characters and an int, not a String.
+ * 
+ * The String is only created when a label is asked for, which is only done for display.
+ * 
+ * @author bradrees
+ *
+ */
+public class LabelTable
+{
+	private char[]	chars		= new char[1024];
+	private int[]	offsets		= new int[257];
+	private int		count		= 0;
+	
+	
+	/**
+	 * Add a label
+	 * 
+	 * @param label
+	 * @return the index of the label
+	 */
+	public synchronized int add(String label)
+	{
+		int length = label.length();
+		int start = offsets[count];
+		
+		if ( start + length > chars.length)
+			chars = Arrays.copyOf(chars, Math.max(chars.length * 2, start + length));
+		
+		if ( count + 2 > offsets.length)
+			offsets = Arrays.copyOf(offsets, offsets.length * 2);
+		
+		label.getChars(0, length, chars, start);
+		offsets[count + 1] = start + length;
+		
+		return count++;
+	}
+	
+	
+	public synchronized String get(int index)
+	{
+		return new String(chars, offsets[index], offsets[index + 1] - offsets[index]);
+	}
+	
+	
+	public synchronized int size()
+	{
+		return count;
+	}
+}
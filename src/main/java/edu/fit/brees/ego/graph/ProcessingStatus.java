@@ -17,6 +17,10 @@
  */
 package edu.fit.brees.ego.graph;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
 
 /**
  * This class is used to keep track of the status of all running threads.
@@ -30,6 +34,9 @@ public class ProcessingStatus
 {
 
 	protected int	doneCount	= 0;
+	
+	// the vertices that had an ID change since the last iteration
+	protected ConcurrentLinkedQueue<EgoVertex>	changed	= new ConcurrentLinkedQueue<>();
 
 	public ProcessingStatus()
 	{
@@ -58,5 +65,30 @@ public class ProcessingStatus
 	}
 	
 	
+	public void addChanged(EgoVertex v)
+	{
+		changed.add(v);
+	}
+	
+	
+	/**
+	 * Remove and return all the vertices that had an ID change
+	 * 
+	 * @return
+	 */
+	public List<EgoVertex> drainChanged()
+	{
+		List<EgoVertex> list = new ArrayList<>();
+		EgoVertex v = changed.poll();
+		
+		while ( v != null) {
+			list.add(v);
+			v = changed.poll();
+		}
+		
+		return list;
+	}
+	
+	
 	
 }
@@ -0,0 +1,158 @@
+/*
+ * 
+ * Copyright 2014 Bradley S. Rees
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License. 
+ *  
+ */
+package edu.fit.brees.ego.graph;
+
+import java.util.Arrays;
+
+
+/**
+ * Orderings of the vertices of a CompactGraph that put neighbors close together in memory.
+ * 
+ * 	degree	- highest degree first, the hubs and their labels share the cache
+ * 	bfs		- breadth first from the highest degree vertex of each component
+ * 	rcm		- reverse Cuthill-McKee, breadth first from a lowest degree vertex visiting
+ * 			  the neighbors in order of degree, then reversed.  This keeps the neighbors of a 
+ * 			  vertex in a narrow band of indexes
+ * 
+ * @author bradrees
+ *
+ */
+public class VertexOrdering
+{
+	public static final String[]	NAMES	= { "degree", "bfs", "rcm" };
+	
+	
+	public static boolean isKnown(String name)
+	{
+		return Arrays.asList(NAMES).contains(name);
+	}
+	
+	
+	/**
+	 * 
+	 * @param g
+	 * @param name
+	 * @return the indexes of g in the new order
+	 */
+	public static int[] order(CompactGraph g, String name)
+	{
+		switch (name) {
+		case "degree":
+			return byDegree(g, true);
+		case "bfs":
+			return breadthFirst(g, byDegree(g, true), false);
+		case "rcm":
+			int[] order = breadthFirst(g, byDegree(g, false), true);
+			
+			for ( int x = 0, y = order.length - 1; x < y; x++, y--) {
+				int t = order[x];
+				order[x] = order[y];
+				order[y] = t;
+			}
+			return order;
+		default:
+			throw new IllegalArgumentException("Unknown vertex ordering " + name);
+		}
+	}
+	
+	
+	/**
+	 * The vertices sorted by degree, ties by index
+	 * 
+	 * @param g
+	 * @param descending
+	 * @return
+	 */
+	private static int[] byDegree(CompactGraph g, boolean descending)
+	{
+		int n = g.getNumberOfVertices();
+		long[] keys = new long[n];
+		
+		for ( int u = 0; u < n; u++) {
+			long d = descending ? Integer.MAX_VALUE - g.degree(u) : g.degree(u);
+			keys[u] = (d << 32) | u;
+		}
+		Arrays.sort(keys);
+		
+		int[] order = new int[n];
+		for ( int x = 0; x < n; x++)
+			order[x] = (int)keys[x];
+		
+		return order;
+	}
+	
+	
+	/**
+	 * Breadth first over all the components, each one started from the first unvisited vertex 
+	 * of the start order
+	 * 
+	 * @param g
+	 * @param start
+	 * @param byDegree	- visit the neighbors of a vertex from lowest to highest degree
+	 * @return
+	 */
+	private static int[] breadthFirst(CompactGraph g, int[] start, boolean byDegree)
+	{
+		int n 			= g.getNumberOfVertices();
+		int[] offsets	= g.getOffsets();
+		int[] adj		= g.getAdj();
+		
+		int[] order 		= new int[n];
+		boolean[] visited	= new boolean[n];
+		long[] keys			= null;
+		int tail = 0;
+		
+		for ( int root : start)
+		{
+			if ( visited[root])
+				continue;
+			
+			visited[root] = true;
+			int head = tail;
+			order[tail++] = root;
+			
+			while ( head < tail)
+			{
+				int u = order[head++];
+				int first = tail;
+				
+				for ( int p = offsets[u]; p < offsets[u + 1]; p++) {
+					if ( ! visited[adj[p]]) {
+						visited[adj[p]] = true;
+						order[tail++] = adj[p];
+					}
+				}
+				
+				if ( byDegree && tail - first > 1)
+				{
+					if ( keys == null || keys.length < tail - first)
+						keys = new long[Math.max(tail - first, 16)];
+					
+					for ( int x = first; x < tail; x++)
+						keys[x - first] = ((long)g.degree(order[x]) << 32) | order[x];
+					Arrays.sort(keys, 0, tail - first);
+					
+					for ( int x = first; x < tail; x++)
+						order[x] = (int)keys[x - first];
+				}
+			}
+		}
+		
+		return order;
+	}
+}
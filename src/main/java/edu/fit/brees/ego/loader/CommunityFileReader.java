@@ -0,0 +1,249 @@
+/*
+ * 
+ * Copyright 2014 Bradley S. Rees
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License. 
+ *  
+ */
+package edu.fit.brees.ego.loader;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.StringTokenizer;
+
+import edu.fit.brees.ego.community.CommunityTable;
+import edu.fit.brees.ego.community.CommunityWriter;
+
+
+/**
+ * Reads the communities written by the CommunityWriter back into a CommunityTable, from 
+ * either format.  The format is found from the first four bytes, the binary file starts with 
+ * "EGOC".  If there is no file at the path, the shards path.0, path.1, ... are read in order.
+ * 
+ * Run on its own with a text and a binary file of the same communities, it checks that they 
+ * hold the same labels and members:
+ * 
+ * 	CommunityFileReader <text path> <binary path>
+ * 
+ * @author bradrees
+ *
+ */
+public class CommunityFileReader
+{
+	private float[]	labels	= new float[1024];
+	private int[]	offsets	= new int[1025];
+	private int[]	members	= new int[1024];
+	private int		count	= 0;
+	
+	
+	/**
+	 * Read the file, or its shards
+	 * 
+	 * @param path
+	 * @return
+	 * @throws IOException
+	 */
+	public static CommunityTable read(String path) throws IOException
+	{
+		CommunityFileReader reader = new CommunityFileReader();
+		
+		if ( new File(path).exists())
+			reader.readFile(new File(path));
+		else if ( new File(path + ".0").exists()) {
+			for ( int s = 0; new File(path + "." + s).exists(); s++)
+				reader.readFile(new File(path + "." + s));
+		}
+		else
+			throw new IOException("No community file " + path);
+		
+		return new CommunityTable(Arrays.copyOf(reader.labels, reader.count), 
+				Arrays.copyOf(reader.offsets, reader.count + 1), 
+				Arrays.copyOf(reader.members, reader.offsets[reader.count]));
+	}
+	
+	
+	private void readFile(File file) throws IOException
+	{
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+		
+		try
+		{
+			int magic = ( file.length() >= 4) ? in.readInt() : 0;
+			
+			if ( magic == CommunityWriter.MAGIC)
+				readBinary(in, file);
+			else {
+				in.close();
+				readText(file);
+			}
+		}
+		finally
+		{
+			in.close();
+		}
+	}
+	
+	
+	private void readBinary(DataInputStream in, File file) throws IOException
+	{
+		byte version = in.readByte();
+		if ( version != CommunityWriter.VERSION)
+			throw new IOException("Unknown version " + version + " of " + file);
+		
+		while ( true )
+		{
+			int bits;
+			
+			try {
+				bits = in.readInt();
+			}
+			catch (EOFException e) {
+				return;
+			}
+			
+			int size = readVarint(in);
+			int member = 0;
+			
+			startCommunity(Float.intBitsToFloat(bits), size);
+			
+			for ( int x = 0; x < size; x++) {
+				int v = readVarint(in);
+				
+				// the first member is zig-zag coded, the others are the difference from the one before
+				member = ( x == 0) ? (v >>> 1) ^ -(v & 1) : member + v;
+				addMember(member);
+			}
+		}
+	}
+	
+	
+	private void readText(File file) throws IOException
+	{
+		BufferedReader buffRead = new BufferedReader(new FileReader(file));
+		String line = buffRead.readLine();
+		
+		try
+		{
+			while ( line != null)
+			{
+				int tab = line.indexOf('\t');
+				if ( tab < 0)
+					throw new IOException("No label on line: " + line);
+				
+				StringTokenizer strTok = new StringTokenizer(line.substring(tab + 1));
+				
+				startCommunity(Float.parseFloat(line.substring(0, tab)), strTok.countTokens());
+				
+				while ( strTok.hasMoreTokens())
+					addMember(Integer.parseInt(strTok.nextToken()));
+				
+				line = buffRead.readLine();
+			}
+		}
+		finally
+		{
+			buffRead.close();
+		}
+	}
+	
+	
+	private void startCommunity(float label, int size)
+	{
+		if ( count == labels.length) {
+			labels	= Arrays.copyOf(labels, count * 2);
+			offsets	= Arrays.copyOf(offsets, count * 2 + 1);
+		}
+		
+		labels[count] = label;
+		offsets[count + 1] = offsets[count];
+		count++;
+		
+		if ( offsets[count] + size > members.length)
+			members = Arrays.copyOf(members, Math.max(members.length * 2, offsets[count] + size));
+	}
+	
+	
+	private void addMember(int member)
+	{
+		members[offsets[count]++] = member;
+	}
+	
+	
+	private static int readVarint(DataInputStream in) throws IOException
+	{
+		int value = 0;
+		
+		for ( int shift = 0; ; shift += 7) {
+			int b = in.readUnsignedByte();
+			value |= (b & 0x7F) << shift;
+			
+			if ( (b & 0x80) == 0)
+				return value;
+		}
+	}
+	
+	
+	/**
+	 * Check that a text and a binary file hold the same communities
+	 * 
+	 * @param args	- the text path and the binary path
+	 */
+	public static void main(String[] args)
+	{
+		if ( args.length != 2) {
+			System.out.println("CommunityFileReader <text path> <binary path>");
+			System.exit(-1);
+		}
+		
+		try
+		{
+			CommunityTable text	= read(args[0]);
+			CommunityTable bin	= read(args[1]);
+			
+			if ( text.size() != bin.size()) {
+				System.out.println("FAIL  " + text.size() + " communities in the text, " + bin.size() + " in the binary");
+				System.exit(-1);
+			}
+			
+			for ( int c = 0; c < text.size(); c++)
+			{
+				int a = text.getOffsets()[c], b = bin.getOffsets()[c];
+				
+				boolean same = Float.floatToIntBits(text.getLabel(c)) == Float.floatToIntBits(bin.getLabel(c)) 
+						&& text.getSize(c) == bin.getSize(c);
+				
+				for ( int x = 0; same && x < text.getSize(c); x++)
+					same = text.getMembers()[a + x] == bin.getMembers()[b + x];
+				
+				if ( ! same) {
+					System.out.println("FAIL  community " + c + " (" + text.getLabel(c) + ") differs");
+					System.exit(-1);
+				}
+			}
+			
+			System.out.println("OK    " + text.size() + " communities, " + text.getOffsets()[text.size()] + " members");
+		}
+		catch (IOException e)
+		{
+			System.out.println(e.getMessage());
+			System.exit(-1);
+		}
+	}
+}
@@ -256,8 +256,7 @@ public class DataReader
 
 		for ( int n = 0; n <  count; n++)
 		{
-			String name = new String("ID: " + n);
-			EgoVertex agent = new EgoVertex(name, id, threshold, status);
+			EgoVertex agent = new EgoVertex(id, threshold, status);
 
 			vertexMap.put(id, agent);
 			++id;
@@ -276,8 +275,7 @@ public class DataReader
 	 */
 	protected EgoVertex createAgent(Map<Integer, EgoVertex> vertexMap, int id)
 	{
-		String name = new String("ID: " + id	);
-		EgoVertex agent = new EgoVertex(name, id, threshold, status);
+		EgoVertex agent = new EgoVertex(id, threshold, status);
 
 		vertexMap.put(id, agent);
 		
@@ -24,6 +24,7 @@ import java.io.IOException;
 import java.util.Map;
 
 import edu.fit.brees.ego.graph.EgoVertex;
+import edu.fit.brees.ego.graph.LabelTable;
 import edu.fit.brees.ego.graph.ProcessingStatus;
 
 
@@ -72,6 +73,7 @@ public class GmlDataReader
 	private 	ProcessingStatus 	status 				= null;
 	private 	float				overlapThreshold	= 0.0f;
 	private		int					firstIndex			= 99999;
+	private		LabelTable			labels				= null;			// the labels of all the nodes
 	
 	// global just so that they can be used in debug statements if an error occurs
 	private int edgeCount = 0;
@@ -106,6 +108,7 @@ public class GmlDataReader
 		// save some values that will be passed into every vertex
 		this.overlapThreshold = overlap;
 		this.status 		= status;
+		this.labels			= new LabelTable();
 		
 		//System.out.println("READING:  " + inputFile);
 		
@@ -196,7 +199,7 @@ public class GmlDataReader
 		// remove the "label" part
 		String label = nodeLine.substring(6).trim();		
 		
-		EgoVertex agent = new EgoVertex(label, id, this.overlapThreshold, this.status);
+		EgoVertex agent = new EgoVertex(labels, labels.add(label), id, this.overlapThreshold, this.status);
 		vertexMap.put(id, agent);
 		
 		// ignore the rest of the lines
@@ -0,0 +1,173 @@
+/*
+ * 
+ * Copyright 2014 Bradley S. Rees
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License. 
+ *  
+ */
+package edu.fit.brees.ego.loader;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.Map;
+import java.util.StringTokenizer;
+
+import edu.fit.brees.ego.distributed.MessageBatch;
+import edu.fit.brees.ego.graph.EgoVertex;
+import edu.fit.brees.ego.graph.ProcessingStatus;
+
+
+/**
+ * Reads the part of a graph that one worker needs, from a file in the same form as DataReader.
+ * 
+ * The worker owns the vertices that MessageBatch.owner maps to it.  Finding the ego-communities 
+ * of an owned vertex needs its neighbors and the edges between them, so the neighbors that are 
+ * owned by another worker are loaded as ghosts.  The file is read twice:
+ * 
+ * 	pass 1 - the edges with an owned end, this also finds the ghosts
+ * 	pass 2 - the edges between two ghosts
+ * 
+ * Edges to vertices that are neither owned nor ghosts are skipped.  The neighbors of an owned
+ * vertex are added in file order, the same as DataReader, so the ego-communities are numbered 
+ * the same way.
+ * 
+ * @author bradrees
+ *
+ */
+public class PartitionReader
+{
+	private final int	worker;
+	private final int	workers;
+	private final int	startValue;
+	private final float	threshold;
+	
+	private final ProcessingStatus	status;
+	
+	private int numberOfEdges		= 0;			// edges read by this worker
+	
+	
+	public PartitionReader(int worker, int workers, int startIndex, float threshold, ProcessingStatus status)
+	{
+		this.worker		= worker;
+		this.workers	= workers;
+		this.startValue	= startIndex;
+		this.threshold	= threshold;
+		this.status		= status;
+	}
+	
+	
+	public int getNumberOfEdges() {
+		return numberOfEdges;
+	}
+	
+	
+	/**
+	 * 
+	 * @param inputFile
+	 * @param owned		- filled with the vertices owned by this worker
+	 * @param ghosts	- filled with the neighbors owned by other workers
+	 * @throws IOException
+	 */
+	public void read(String inputFile, Map<Integer, EgoVertex> owned, Map<Integer, EgoVertex> ghosts) throws IOException
+	{
+		doRead(inputFile, owned, ghosts, true);
+		doRead(inputFile, owned, ghosts, false);
+	}
+	
+	
+	private void doRead(String inputFile, Map<Integer, EgoVertex> owned, Map<Integer, EgoVertex> ghosts, 
+			boolean firstPass) throws IOException
+	{
+		BufferedReader buffRead = new BufferedReader(new FileReader(inputFile));
+		
+		boolean edges = false;
+		String line = buffRead.readLine();
+		
+		while (line != null)
+		{
+			if ( line.startsWith("#") )
+			{
+				// comment line so skip
+			}
+			else if ( line.startsWith("*") )
+			{
+				edges = line.contains("Edges") || line.contains("Arcs");
+				
+				if ( firstPass && line.contains("Vertices")) {
+					int nodeCount = Integer.parseInt(line.substring(line.indexOf("Vertices") + 9).trim());
+					
+					for ( int id = startValue; id < startValue + nodeCount; id++) {
+						if ( isOwned(id))
+							owned.put(id, new EgoVertex(id, threshold, status));
+					}
+				}
+			}
+			else if ( edges )
+			{
+				StringTokenizer strTok = new StringTokenizer(line);
+				
+				int a = Integer.parseInt(strTok.nextToken());
+				int b = Integer.parseInt(strTok.nextToken());
+				
+				boolean ownA = isOwned(a);
+				boolean ownB = isOwned(b);
+				
+				if ( firstPass && (ownA || ownB) )
+				{
+					EgoVertex agentA = get(ownA ? owned : ghosts, a);
+					EgoVertex agentB = get(ownB ? owned : ghosts, b);
+					
+					agentA.addNeighbor(agentB);
+					agentB.addNeighbor(agentA);
+					
+					if ( ownA )
+						numberOfEdges++;
+				}
+				else if ( ! firstPass && ! ownA && ! ownB)
+				{
+					EgoVertex agentA = ghosts.get(a);
+					EgoVertex agentB = ghosts.get(b);
+					
+					if ( agentA != null && agentB != null) {
+						agentA.addNeighbor(agentB);
+						agentB.addNeighbor(agentA);
+					}
+				}
+			}
+			
+			line = buffRead.readLine();
+		}
+		
+		buffRead.close();
+	}
+	
+	
+	private boolean isOwned(int id)
+	{
+		return MessageBatch.owner(id, workers) == worker;
+	}
+	
+	
+	private EgoVertex get(Map<Integer, EgoVertex> map, int id)
+	{
+		EgoVertex v = map.get(id);
+		
+		if ( v == null) {
+			v = new EgoVertex(id, threshold, status);
+			map.put(id, v);
+		}
+		
+		return v;
+	}
+}
@@ -0,0 +1,119 @@
+/*
+ * 
+ * Copyright 2014 Bradley S. Rees
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License. 
+ *  
+ */
+package edu.fit.brees.ego.util;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+
+/**
+ * A lock-free union-find (disjoint set) over the numbers 0 .. size-1.
+ * 
+ * Roots are only ever linked below a root with a smaller number, so the root of a set is 
+ * always its smallest member and no cycle can be created by two threads linking at once.
+ * Find uses path halving, the halving steps are compare-and-set so a lost race only means 
+ * a path was not shortened.
+ * 
+ * @author bradrees
+ *
+ */
+public class ConcurrentUnionFind
+{
+	private final AtomicIntegerArray	parent;
+	
+	
+	public ConcurrentUnionFind(int size)
+	{
+		parent = new AtomicIntegerArray(size);
+		
+		for ( int x = 0; x < size; x++)
+			parent.set(x, x);
+	}
+	
+	
+	/**
+	 * Return the root of the set holding x
+	 * 
+	 * @param x
+	 * @return
+	 */
+	public int find(int x)
+	{
+		while ( true ) 
+		{
+			int p = parent.get(x);
+			
+			if ( p == x )
+				return x;
+			
+			int gp = parent.get(p);
+			
+			if ( gp != p )
+				parent.compareAndSet(x, p, gp);
+			
+			x = gp;
+		}
+	}
+	
+	
+	/**
+	 * Join the sets holding a and b
+	 * 
+	 * @param a
+	 * @param b
+	 * @return T/F - false if they were already in the same set
+	 */
+	public boolean union(int a, int b)
+	{
+		while ( true )
+		{
+			a = find(a);
+			b = find(b);
+			
+			if ( a == b )
+				return false;
+			
+			// link the larger root below the smaller
+			if ( a < b ) {
+				if ( parent.compareAndSet(b, b, a) )
+					return true;
+			} else {
+				if ( parent.compareAndSet(a, a, b) )
+					return true;
+			}
+		}
+	}
+	
+	
+	/**
+	 * Are a and b in the same set?  Only reliable once all unions are done.
+	 * 
+	 * @param a
+	 * @param b
+	 * @return
+	 */
+	public boolean connected(int a, int b)
+	{
+		return find(a) == find(b);
+	}
+	
+	
+	public int size()
+	{
+		return parent.length();
+	}
+}
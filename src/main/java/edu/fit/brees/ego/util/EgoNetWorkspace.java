@@ -0,0 +1,167 @@
+/*
+ * 
+ * Copyright 2014 Bradley S. Rees
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License. 
+ *  
+ */
+package edu.fit.brees.ego.util;
+
+import java.util.Arrays;
+
+import edu.fit.brees.ego.graph.EgoVertex;
+
+
+/**
+ * The scratch space for extracting the ego-communities of one vertex.  Each thread keeps one
+ * and it only grows, so once it is as large as the highest degree seen, extraction allocates
+ * nothing but the ego-communities it returns.
+ * 
+ * 	friends	- the neighbors, in the order of the EgoVertex neighbor table
+ * 	parent	- union-find over the neighbors
+ * 	groupOf	- group number of each component root
+ * 	keys	- open addressing table from neighbor ID to its place in friends.  An entry is only
+ * 			  valid if its stamp is current, so the table is cleared by moving to a new stamp.
+ * 
+ * @author bradrees
+ *
+ */
+class EgoNetWorkspace
+{
+	private static final ThreadLocal<EgoNetWorkspace> workspace = new ThreadLocal<EgoNetWorkspace>() {
+		protected EgoNetWorkspace initialValue() {
+			return new EgoNetWorkspace();
+		}
+	};
+	
+	EgoVertex[]	friends		= new EgoVertex[16];
+	int[]		parent		= new int[16];
+	int[]		groupOf		= new int[16];
+	
+	private int[]	keys		= new int[32];
+	private int[]	values		= new int[32];
+	private int[]	stamp		= new int[32];
+	private int		current		= 0;
+	private int		mask		= 31;
+	
+	
+	/**
+	 * The workspace of this thread
+	 * 
+	 * @return
+	 */
+	static EgoNetWorkspace get()
+	{
+		return workspace.get();
+	}
+	
+	
+	/**
+	 * Make room for a vertex with d neighbors
+	 * 
+	 * @param d
+	 */
+	void ensure(int d)
+	{
+		if ( friends.length < d) {
+			int size = Math.max(d, friends.length * 2);
+			friends	= new EgoVertex[size];
+			parent	= new int[size];
+			groupOf	= new int[size];
+		}
+	}
+	
+	
+	/**
+	 * Number the neighbors, so they can be found by ID
+	 * 
+	 * @param d	- the number of friends
+	 */
+	void index(int d)
+	{
+		if ( keys.length < d * 2) {
+			int size = Integer.highestOneBit(d * 2 - 1) << 1;
+			keys	= new int[size];
+			values	= new int[size];
+			stamp	= new int[size];
+			current	= 0;
+			mask	= size - 1;
+		}
+		
+		if ( ++current == Integer.MAX_VALUE) {
+			Arrays.fill(stamp, 0);
+			current = 1;
+		}
+		
+		for ( int x = 0; x < d; x++)
+		{
+			int id = friends[x].getId();
+			int h = hash(id);
+			
+			while ( stamp[h] == current)
+				h = (h + 1) & mask;
+			
+			stamp[h]	= current;
+			keys[h]		= id;
+			values[h]	= x;
+		}
+	}
+	
+	
+	/**
+	 * 
+	 * @param id
+	 * @return the place of the neighbor in friends, -1 if it is not a neighbor
+	 */
+	int indexOf(int id)
+	{
+		int h = hash(id);
+		
+		while ( stamp[h] == current) {
+			if ( keys[h] == id)
+				return values[h];
+			h = (h + 1) & mask;
+		}
+		
+		return -1;
+	}
+	
+	
+	private int hash(int id)
+	{
+		int h = id * 0x9E3779B9;
+		return (h ^ (h >>> 16)) & mask;
+	}
+	
+	
+	int find(int x)
+	{
+		while ( parent[x] != x) {
+			parent[x] = parent[parent[x]];
+			x = parent[x];
+		}
+		return x;
+	}
+	
+	
+	void union(int a, int b)
+	{
+		int ra = find(a);
+		int rb = find(b);
+		
+		if ( ra < rb)
+			parent[rb] = ra;
+		else if ( rb < ra)
+			parent[ra] = rb;
+	}
+}
@@ -17,115 +17,239 @@
  */
 package edu.fit.brees.ego.util;
 
-import java.util.Collection;
-import java.util.Hashtable;
-import java.util.Stack;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.concurrent.RecursiveAction;
 
 import edu.fit.brees.ego.community.EgoCommunity;
 import edu.fit.brees.ego.graph.EgoVertex;
-import edu.fit.brees.ego.jung.JungNetwork;
-import edu.fit.brees.ego.jung.JungVertex;
 
 
 public class ExtractEgoCommunities
 {
 	/**
-	 * Given an EgoVertex, this method returns a collection of friendship-group graphs centered on 
-	 * the passed in ego-node
+	 * Given an EgoVertex, this method returns the friendship-groups (ego-communities) centered on 
+	 * the passed in ego-node.  The groups are the connected pieces of the ego-net once the ego-node
+	 * is removed, they are found with a union-find over the neighbors in the thread's workspace.
 	 * 
-	 * @param egoNet	- the graph from which friendship groups are extracted
-	 * @param egoNode	- the central ego node
+	 * @param baseVertex	- the central ego node
 	 * @return
 	 */
 	public static ArrayList<EgoCommunity> extract(EgoVertex baseVertex) throws Exception
 	{
-		Hashtable<Integer, EgoCommunity>	groups 	= new Hashtable<>();	// what will be returned
+		EgoNetWorkspace ws = EgoNetWorkspace.get();
+		ws.ensure(baseVertex.getNeighborCount());
 		
-		Stack<JungVertex> allVertices 	= new Stack<>();
-		Stack<JungVertex> vertexToProcess = new Stack<>();
-		
-		// create the JUNG graph that supports the ego net detection
-		JungNetwork egoNet	= new JungNetwork();
-		JungVertex	egoNode = new JungVertex(baseVertex.getId(), baseVertex.getName());
-		egoNet.addVertex(egoNode);
-		
-		// the portions of the ego-community ID
-		int 	baseID 	= baseVertex.getId();
-		int		groupID	= 0;						// this will be incremented 
+		EgoVertex[] friends	= ws.friends;
+		int 		baseID 	= baseVertex.getId();
+		int			d		= 0;
 		
+		// the ego-node is not part of its own ego-net
+		for ( EgoVertex friend : baseVertex.getNeighbors()) {
+			if ( friend.getId() != baseID)
+				friends[d++] = friend;
+		}
 		
-		// get the neighbors
-		Collection<EgoVertex> neighbors = baseVertex.getNeighbors();
+		for ( int x = 0; x < d; x++)
+			ws.parent[x] = x;
 		
-		// step though each neighbor a
-		for ( EgoVertex friend : neighbors)
+		if ( d == 2 )
 		{
-			JungVertex node = new JungVertex(friend.getId(), friend.getName());
-			egoNet.addEdge("edge", egoNode, node);		
-			allVertices.push(node);
+			// no ego-net is needed, two neighbors are one group if they are adjacent
+			if ( friends[0].isNeighbor(friends[1].getId()))
+				ws.union(0, 1);
 		}
-			
-		// get the half-hops: i.e. the between neighbor edges
-		for ( EgoVertex friend : neighbors)
+		else if ( d > 2 )
 		{
-			JungVertex freindNode = egoNet.findVertex(friend.getId() );
-			
-			Collection<EgoVertex> oneHop = friend.getNeighbors();
+			// get the half-hops: i.e. the between neighbor edges
+			ws.index(d);
 			
-			for (EgoVertex f2 : oneHop)
+			for ( int a = 0; a < d; a++)
 			{
-				JungVertex f2Node = egoNet.findVertex(f2.getId());
-
-				if (f2Node != null)
+				for ( EgoVertex f2 : friends[a].getNeighbors())
 				{
-					egoNet.addEdge("edge", freindNode, f2Node);
+					int b = ws.indexOf(f2.getId());
+					
+					if ( b > a)
+						ws.union(a, b);
 				}
 			}
 		}
+		
+		for ( int x = 0; x < d; x++)
+			ws.parent[x] = ws.find(x);
+		
+		ArrayList<EgoCommunity> answer = toEgoCommunities(baseID, friends, ws.parent, d);
+		
+		Arrays.fill(friends, 0, d, null);
+		return answer;
+	}	
+	
+	
+	/**
+	 * The ID of an ego-community is the ID of the ego-vertex with the group number as the decimal part
+	 * 
+	 * @param baseID
+	 * @param groupID
+	 * @return
+	 */
+	public static float egoCommunityId(int baseID, int groupID)
+	{
+		return Float.parseFloat(baseID + "." + groupID);
+	}
+	
 	
-		// remove the ego-vertex.  This will also cause all edges to the vertex to be removed
-		egoNet.removeVertex(egoNode);
+	/**
+	 * The same as extract, for a high degree vertex.  Finding the edges between the neighbors 
+	 * (the half-hops) is the expensive part, so it is split into fork-join subtasks over ranges 
+	 * of neighbors.  Each subtask joins the two ends of the half-hops it finds in a shared 
+	 * concurrent union-find over the neighbors, the components are read once all are done.  
+	 * This must be called from a task running in a ForkJoinPool.
+	 * 
+	 * The groups are numbered in the same order as extract 
+	 * 
+	 * @param baseVertex	- the central ego node
+	 * @param grain			- the number of adjacency entries scanned by one subtask
+	 * @return
+	 */
+	public static ArrayList<EgoCommunity> extractSplit(EgoVertex baseVertex, int grain)
+	{
+		// number the neighbors, the ego-node is not part of its own ego-net
+		ArrayList<EgoVertex> list = new ArrayList<>(baseVertex.getNeighborCount());
 		
-		// this is just a modified BFS
-		while ( ! allVertices.isEmpty() ) {
-			groupID++;
-			
-			EgoCommunity ec = new EgoCommunity();
-			float id = Float.parseFloat(baseID + "." + groupID);			
-			ec.setId(id);				// set the ego-community ID
-			ec.addToList(baseID);		// add the ego-vertex to the list
-			ec.setChanged(true);		//  mark it as being changed
-			groups.put(groupID, ec);	// save in the hashtable for processing
+		for ( EgoVertex friend : baseVertex.getNeighbors()) {
+			if ( friend.getId() != baseVertex.getId())
+				list.add(friend);
+		}
+		int d = list.size();
+		
+		final EgoVertex[]				friends	= list.toArray(new EgoVertex[d]);
+		final HashMap<Integer, Integer>	local	= new HashMap<>(d * 2);
+		
+		for ( int x = 0; x < d; x++)
+			local.put(friends[x].getId(), x);
+		
+		// get the half-hops
+		ConcurrentUnionFind components = new ConcurrentUnionFind(d);
+		new HalfHopTask(friends, local, 0, d, grain, components).invoke();
+		
+		// merge the partial components
+		int[] root = new int[d];
+		for ( int x = 0; x < d; x++)
+			root[x] = components.find(x);
+		
+		return toEgoCommunities(baseVertex.getId(), friends, root);
+	}
+	
+	
+	/**
+	 * Create the ego-communities from the components of the ego-net.
+	 * The groups are numbered starting from the last neighbor, and returned highest number first.
+	 * This is the order of the stack and Hashtable of the original JUNG based extraction.
+	 * 
+	 * @param baseID
+	 * @param friends
+	 * @param root	- the component root of each neighbor
+	 * @return
+	 */
+	static ArrayList<EgoCommunity> toEgoCommunities(int baseID, EgoVertex[] friends, int[] root)
+	{
+		return toEgoCommunities(baseID, friends, root, friends.length);
+	}
+	
+	
+	/**
+	 * 
+	 * @param baseID
+	 * @param friends
+	 * @param root	- the component root of each neighbor, less than d
+	 * @param d		- the number of neighbors
+	 * @return
+	 */
+	static ArrayList<EgoCommunity> toEgoCommunities(int baseID, EgoVertex[] friends, int[] root, int d)
+	{
+		EgoNetWorkspace ws = EgoNetWorkspace.get();
+		ws.ensure(d);
+		
+		int[] groupOf = ws.groupOf;
+		Arrays.fill(groupOf, 0, d, 0);
+		
+		ArrayList<EgoCommunity> groups = new ArrayList<>();
+		
+		for ( int x = d - 1; x >= 0; x--)
+		{
+			int r = root[x];
 			
-			JungVertex jVertex =  allVertices.pop();
-			jVertex.setTag(groupID);
-			vertexToProcess.push(jVertex);
-
-			while (! vertexToProcess.isEmpty() ) {
-				JungVertex v = vertexToProcess.pop();
+			if ( groupOf[r] == 0) {
+				int groupID = groups.size() + 1;
 				
-				EgoCommunity group = groups.get(v.getTag());		// the the ego-community
-				group.addToList(v.getId());							// add this vertex to it based on the ID
-
-				Collection<JungVertex> egoNeighbors = egoNet.getNeighbors(v);
-
-				if ( egoNeighbors != null)		// removing vertices could leave this as a singleton
-				{
-					for ( JungVertex v2 : egoNeighbors) {
-						v2.setTag(groupID);
-						vertexToProcess.push(v2);
-						allVertices.remove(v2);
-					}
-				}
+				EgoCommunity ec = new EgoCommunity();
+				ec.setId( egoCommunityId(baseID, groupID) );
+				ec.addToList(baseID);
+				ec.setChanged(true);
+				groups.add(ec);
 				
-				// remove the vertex from the egonet.  
-				// This will keep the process from coming back around to the same vertex
-				egoNet.removeVertex(v);
+				groupOf[r] = groupID;
 			}
+			
+			groups.get(groupOf[r] - 1).addToList(friends[x].getId());
+		}
+		
+		Collections.reverse(groups);
+		return groups;
+	}
+	
+	
+	/**
+	 * Find the edges between neighbors for a range of neighbors and join their ends.  
+	 * Each edge is found from its lower numbered end. 
+	 */
+	@SuppressWarnings("serial")
+	private static class HalfHopTask extends RecursiveAction
+	{
+		private final EgoVertex[] 					friends;
+		private final HashMap<Integer, Integer>		local;
+		private final int							from;
+		private final int							to;
+		private final int							grain;
+		private final ConcurrentUnionFind			components;
+		
+		HalfHopTask(EgoVertex[] friends, HashMap<Integer, Integer> local, int from, int to, int grain, 
+				ConcurrentUnionFind components)
+		{
+			this.friends	= friends;
+			this.local		= local;
+			this.from		= from;
+			this.to			= to;
+			this.grain		= grain;
+			this.components	= components;
 		}
+		
+		protected void compute()
+		{
+			long work = 0;
+			for ( int x = from; x < to; x++)
+				work += friends[x].getNeighborCount();
 			
-		ArrayList<EgoCommunity> answer = new ArrayList<>(groups.values());
-		return answer;
-	}	
+			if ( work > grain && to - from > 1) {
+				int mid = (from + to) >>> 1;
+				invokeAll(new HalfHopTask(friends, local, from, mid, grain, components),
+						  new HalfHopTask(friends, local, mid, to, grain, components));
+				return;
+			}
+			
+			for ( int a = from; a < to; a++)
+			{
+				for ( EgoVertex f2 : friends[a].getNeighbors())
+				{
+					Integer b = local.get(f2.getId());
+					
+					if ( b != null && b > a)
+						components.union(a, b);
+				}
+			}
+		}
+	}
 }
@@ -0,0 +1,95 @@
+/*
+ * 
+ * Copyright 2014 Bradley S. Rees
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License. 
+ *  
+ */
+package edu.fit.brees.ego.util;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+
+/**
+ * Run a loop over a range of numbers on a ForkJoinPool.  The range is split in half until 
+ * a piece is no larger than the grain size.
+ * 
+ * @author bradrees
+ *
+ */
+public class Parallel
+{
+	/**
+	 * The body of the loop, run on the range [from, to)
+	 */
+	public interface Range
+	{
+		public void run(int from, int to);
+	}
+	
+	
+	/**
+	 * Run the body over [0, n) and wait for it to finish
+	 * 
+	 * @param pool
+	 * @param n
+	 * @param grain
+	 * @param body
+	 */
+	public static void forRange(ForkJoinPool pool, int n, int grain, Range body)
+	{
+		pool.invoke(new RangeTask(body, 0, n, Math.max(1, grain)));
+	}
+	
+	
+	/**
+	 * A grain size that gives each thread several pieces
+	 * 
+	 * @param pool
+	 * @param n
+	 * @return
+	 */
+	public static int grain(ForkJoinPool pool, int n)
+	{
+		return Math.max(64, n / (pool.getParallelism() * 8));
+	}
+	
+	
+	@SuppressWarnings("serial")
+	private static class RangeTask extends RecursiveAction
+	{
+		private final Range	body;
+		private final int	from;
+		private final int	to;
+		private final int	grain;
+		
+		RangeTask(Range body, int from, int to, int grain)
+		{
+			this.body	= body;
+			this.from	= from;
+			this.to		= to;
+			this.grain	= grain;
+		}
+		
+		protected void compute()
+		{
+			if ( to - from > grain) {
+				int mid = (from + to) >>> 1;
+				invokeAll(new RangeTask(body, from, mid, grain), new RangeTask(body, mid, to, grain));
+			} else if ( to > from) {
+				body.run(from, to);
+			}
+		}
+	}
+}
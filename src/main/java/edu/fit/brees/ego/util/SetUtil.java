@@ -22,6 +22,10 @@ package edu.fit.brees.ego.util;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+
+import edu.fit.brees.ego.community.CommunityTable;
+import edu.fit.brees.ego.community.MembershipIndex;
 
 
 /**
@@ -47,7 +51,7 @@ public class SetUtil
 	{
 		int minSize = 999;
 		
-		int intersectSize = SetUtil.intersection(a, b).size();
+		int intersectSize = SetUtil.intersectionSize(a, b);
 
 		if ( a.size() < b.size())
 			minSize = (int)( (float)a.size() * threshold);
@@ -79,13 +83,30 @@ public class SetUtil
 	/**
 	 * Return the size of the intersection
 	 * 
+	 * The smaller set is probed against the larger, no set is created
+	 * 
 	 * @param me
 	 * @param them
 	 * @return
 	 */
 	static public int intersectionSize(Set<Integer> me, Set<Integer> them)
 	{
-		return SetUtil.intersection(me, them).size();
+		Set<Integer> small	= me;
+		Set<Integer> large	= them;
+		
+		if ( me.size() > them.size()) {
+			small 	= them;
+			large	= me;
+		}
+		
+		int count = 0;
+		
+		for ( Integer x : small) {
+			if ( large.contains(x) )
+				++count;
+		}
+		
+		return count;
 	}
 	
 	
@@ -148,42 +169,67 @@ public class SetUtil
 	 */
 	static public void removeSubsets(Map<Float, HashSet<Integer>> communities)
 	{
-		Set<Float> toDelete = new HashSet<>();
-		
-		
-		Set<Float> keys = communities.keySet();
-		int size = keys.size();
-		
-		Float[] keyArray = keys.toArray( new Float[size]);
+		ForkJoinPool pool = new ForkJoinPool();
+		removeSubsets(communities, pool);
+		pool.shutdown();
+	}
+	
+	
+	/**
+	 * Remove any proper subset, the communities are checked in parallel.
+	 * 
+	 * A superset of X must hold every vertex of X, so the only candidates are the larger 
+	 * communities of the vertex of X that is in the fewest communities.  The communities are 
+	 * sorted by size, so the candidates of a vertex are scanned from the largest down and the 
+	 * scan stops at the size of X.  The containment test is a merge of the sorted members.
+	 * 
+	 * @param communities
+	 * @param pool
+	 */
+	static public void removeSubsets(Map<Float, HashSet<Integer>> communities, ForkJoinPool pool)
+	{
+		final CommunityTable	table	= CommunityTable.bySize(communities);
+		final MembershipIndex	index	= new MembershipIndex(table);
+		final boolean[]			subset	= new boolean[table.size()];
 		
-		HashSet<Integer> X	= null;
-		HashSet<Integer> Y	= null;
-		float id = 0;
+		final int[] offsets = table.getOffsets();
+		final int[] members = table.getMembers();
 		
-		for ( int x = 0; x < size -1; x++)
-		{
-			id = keyArray[x];
-			X = communities.get(id);
-			
-			for (int y = x+1; y < size; y++)
-			{
-				id = keyArray[y];
-				Y = communities.get(id);
-				
-				// only compare if X is smaller than Y
-				if ( X.size() < Y.size())
+		Parallel.forRange(pool, table.size(), Parallel.grain(pool, table.size()), new Parallel.Range() {
+			public void run(int from, int to) {
+				for ( int x = from; x < to; x++)
 				{
-					if (SetUtil.overlapCoefficient(X, Y) == 1)
-					{
-						toDelete.add(id);
+					int size = table.getSize(x);
+					if ( size == 0)
 						continue;
+					
+					// the rarest vertex
+					int rare = members[offsets[x]];
+					for ( int p = offsets[x] + 1; p < offsets[x + 1]; p++) {
+						if ( index.getCount(members[p]) < index.getCount(rare))
+							rare = members[p];
+					}
+					
+					for ( int k = index.getCount(rare) - 1; k >= 0; k--)
+					{
+						int y = index.getCommunity(rare, k);
+						
+						if ( table.getSize(y) <= size)
+							break;
+						
+						if ( table.isSubset(x, y)) {
+							subset[x] = true;
+							break;
+						}
 					}
 				}
 			}
-		}
+		});
 		
-		for ( Float f : toDelete)
-			communities.remove(f);
+		for ( int x = 0; x < subset.length; x++) {
+			if ( subset[x])
+				communities.remove(table.getLabel(x));
+		}
 	}
 	
 	
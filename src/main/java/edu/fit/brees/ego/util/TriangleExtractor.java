@@ -0,0 +1,213 @@
+/*
+ * 
+ * Copyright 2014 Bradley S. Rees
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License. 
+ *  
+ */
+package edu.fit.brees.ego.util;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.concurrent.ForkJoinPool;
+
+import edu.fit.brees.ego.community.EgoCommunity;
+import edu.fit.brees.ego.graph.CompactGraph;
+import edu.fit.brees.ego.graph.EgoVertex;
+
+
+/**
+ * Extract the ego-communities of all vertices at once by listing the triangles of the graph.
+ * 
+ * Two neighbors v and w of u are in the same ego-community when they are connected in u's 
+ * ego-net, and every edge (v,w) of u's ego-net is a triangle (u,v,w).  Each triangle is found 
+ * once and joins the other two corners in the ego-net of each of its three corners.
+ * 
+ * The edges are oriented from the lower to the higher ranked end, ranked by degree.  A triangle 
+ * is found from its lowest ranked corner by intersecting the sorted out-neighbors of two 
+ * corners, which lists all triangles in O(m * sqrt(m)).
+ * 
+ * The ego-nets are one concurrent union-find over the adjacency positions, a vertex's ego-net 
+ * is the range of its positions.
+ * 
+ * @author bradrees
+ *
+ */
+public class TriangleExtractor
+{
+	private final CompactGraph	graph;
+	private final int[]			offsets;
+	private final int[]			adj;
+	private final int[]			reverse;
+	
+	// the oriented (out) neighbors of each vertex, as positions in adj
+	private int[]	outOffsets	= null;
+	private int[]	outPos		= null;
+	
+	private ConcurrentUnionFind	egoNets	= null;
+	
+	
+	public TriangleExtractor(CompactGraph graph)
+	{
+		this.graph		= graph;
+		this.offsets	= graph.getOffsets();
+		this.adj		= graph.getAdj();
+		this.reverse	= graph.getReverse();
+	}
+	
+	
+	/**
+	 * Find the ego-communities of all the vertices and set them on each EgoVertex
+	 * 
+	 * @param vertices
+	 * @param pool
+	 */
+	public void extractAll(Collection<EgoVertex> vertices, ForkJoinPool pool)
+	{
+		final int n = graph.getNumberOfVertices();
+		
+		orient();
+		
+		egoNets = new ConcurrentUnionFind(graph.getNumberOfPositions());
+		
+		Parallel.forRange(pool, n, Parallel.grain(pool, n), new Parallel.Range() {
+			public void run(int from, int to) {
+				for ( int u = from; u < to; u++)
+					listTriangles(u);
+			}
+		});
+		
+		final EgoVertex[] byIndex = new EgoVertex[n];
+		for ( EgoVertex v : vertices)
+			byIndex[graph.indexOf(v.getId())] = v;
+		
+		Parallel.forRange(pool, n, Parallel.grain(pool, n), new Parallel.Range() {
+			public void run(int from, int to) {
+				for ( int u = from; u < to; u++)
+					byIndex[u].setEgoCommunities( toEgoCommunities(u, byIndex[u]) );
+			}
+		});
+	}
+	
+	
+	/**
+	 * Orient each edge from the lower to the higher ranked end. 
+	 * The rank is the degree, ties broken by index.
+	 */
+	private void orient()
+	{
+		int n = graph.getNumberOfVertices();
+		
+		outOffsets = new int[n + 1];
+		
+		for ( int u = 0; u < n; u++) {
+			int out = 0;
+			for ( int p = offsets[u]; p < offsets[u + 1]; p++) {
+				if ( lowerRank(u, adj[p]) )
+					out++;
+			}
+			outOffsets[u + 1] = outOffsets[u] + out;
+		}
+		
+		outPos = new int[outOffsets[n]];
+		
+		for ( int u = 0; u < n; u++) {
+			int o = outOffsets[u];
+			for ( int p = offsets[u]; p < offsets[u + 1]; p++) {
+				if ( lowerRank(u, adj[p]) )
+					outPos[o++] = p;			// still sorted by neighbor index
+			}
+		}
+	}
+	
+	
+	private boolean lowerRank(int u, int v)
+	{
+		int du = graph.degree(u);
+		int dv = graph.degree(v);
+		
+		return du < dv || (du == dv && u < v);
+	}
+	
+	
+	/**
+	 * List the triangles whose lowest ranked corner is u
+	 * 
+	 * @param u
+	 */
+	private void listTriangles(int u)
+	{
+		for ( int i = outOffsets[u]; i < outOffsets[u + 1]; i++)
+		{
+			int pUV = outPos[i];
+			int v 	= adj[pUV];
+			
+			// intersect out(u) and out(v)
+			int a 		= outOffsets[u];
+			int aEnd	= outOffsets[u + 1];
+			int b		= outOffsets[v];
+			int bEnd	= outOffsets[v + 1];
+			
+			while ( a < aEnd && b < bEnd)
+			{
+				int wa = adj[outPos[a]];
+				int wb = adj[outPos[b]];
+				
+				if ( wa < wb )
+					a++;
+				else if ( wa > wb )
+					b++;
+				else {
+					int pUW = outPos[a];
+					int pVW = outPos[b];
+					
+					egoNets.union(pUV, pUW);							// v-w in u's ego-net
+					egoNets.union(reverse[pUV], pVW);					// u-w in v's ego-net
+					egoNets.union(reverse[pUW], reverse[pVW]);			// u-v in w's ego-net
+					
+					a++;
+					b++;
+				}
+			}
+		}
+	}
+	
+	
+	/**
+	 * Create the ego-communities of u from the components of its positions.  The neighbors 
+	 * are taken in the order of the EgoVertex, so the groups are numbered as in extract.
+	 * 
+	 * @param u
+	 * @param vertex
+	 * @return
+	 */
+	private ArrayList<EgoCommunity> toEgoCommunities(int u, EgoVertex vertex)
+	{
+		ArrayList<EgoVertex> list = new ArrayList<>(vertex.getNeighborCount());
+		
+		for ( EgoVertex friend : vertex.getNeighbors()) {
+			if ( friend.getId() != vertex.getId())
+				list.add(friend);
+		}
+		
+		EgoVertex[] friends = list.toArray(new EgoVertex[list.size()]);
+		int[] root = new int[friends.length];
+		
+		for ( int x = 0; x < friends.length; x++) {
+			int p = graph.position(u, graph.indexOf(friends[x].getId()));
+			root[x] = egoNets.find(p) - offsets[u];
+		}
+		
+		return ExtractEgoCommunities.toEgoCommunities(vertex.getId(), friends, root);
+	}
+}